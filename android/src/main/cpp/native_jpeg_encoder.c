@@ -0,0 +1,218 @@
+#include <jni.h>
+#include <setjmp.h>
+#include <stdio.h>
+#include <stdint.h>
+#include <stdlib.h>
+#include <string.h>
+#include <android/bitmap.h>
+#include <jpeglib.h>
+#include <jerror.h>
+
+#ifndef JCS_EXTENSIONS
+#error "libjpeg-turbo or mozjpeg is required, plain libjpeg can't read RGBX pixels"
+#endif
+
+/*
+ * Encoder behind NativeJpegEncoder. Rows are read straight from the locked bitmap and encoded
+ * output goes to the Java OutputStream through the byte[] passed in, one buffer at a time.
+ *
+ * mozjpeg compresses with its max compression profile by default (trellis quantization, optimized
+ * progressive scans), libjpeg-turbo with its standard settings plus optimized Huffman tables.
+ */
+
+struct error_manager {
+    struct jpeg_error_mgr pub;
+    jmp_buf jump;
+};
+
+struct destination_manager {
+    struct jpeg_destination_mgr pub;
+    JNIEnv *env;
+    jobject out;
+    jmethodID write;
+    jbyteArray buffer;
+    JOCTET *data;
+    size_t size;
+};
+
+static void error_exit(j_common_ptr cinfo) {
+    struct error_manager *err = (struct error_manager *) cinfo->err;
+    longjmp(err->jump, 1);
+}
+
+static void init_destination(j_compress_ptr cinfo) {
+    struct destination_manager *dest = (struct destination_manager *) cinfo->dest;
+    dest->pub.next_output_byte = dest->data;
+    dest->pub.free_in_buffer = dest->size;
+}
+
+/* returns 0 if the stream threw, the exception is rethrown once the encoder is unwound */
+static int flush(struct destination_manager *dest, size_t length) {
+    JNIEnv *env = dest->env;
+    if (length == 0) {
+        return 1;
+    }
+    (*env)->SetByteArrayRegion(env, dest->buffer, 0, (jsize) length, (const jbyte *) dest->data);
+    (*env)->CallVoidMethod(env, dest->out, dest->write, dest->buffer, 0, (jint) length);
+    return !(*env)->ExceptionCheck(env);
+}
+
+static boolean empty_output_buffer(j_compress_ptr cinfo) {
+    struct destination_manager *dest = (struct destination_manager *) cinfo->dest;
+    if (!flush(dest, dest->size)) {
+        ERREXIT(cinfo, JERR_FILE_WRITE);
+    }
+    dest->pub.next_output_byte = dest->data;
+    dest->pub.free_in_buffer = dest->size;
+    return TRUE;
+}
+
+static void term_destination(j_compress_ptr cinfo) {
+    struct destination_manager *dest = (struct destination_manager *) cinfo->dest;
+    if (!flush(dest, dest->size - dest->pub.free_in_buffer)) {
+        ERREXIT(cinfo, JERR_FILE_WRITE);
+    }
+}
+
+static void rgb565_to_rgb(const uint16_t *pixels, JSAMPLE *row, uint32_t width) {
+    for (uint32_t x = 0; x < width; x++) {
+        uint16_t pixel = pixels[x];
+        uint8_t r = (pixel >> 11) & 0x1f;
+        uint8_t g = (pixel >> 5) & 0x3f;
+        uint8_t b = pixel & 0x1f;
+        row[x * 3] = (JSAMPLE) ((r << 3) | (r >> 2));
+        row[x * 3 + 1] = (JSAMPLE) ((g << 2) | (g >> 4));
+        row[x * 3 + 2] = (JSAMPLE) ((b << 3) | (b >> 2));
+    }
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_reactnative_ivpusic_imagepicker_NativeJpegEncoder_nativeCompress(
+        JNIEnv *env,
+        jclass clazz,
+        jobject bitmap,
+        jint quality,
+        jboolean progressive,
+        jboolean full_chroma,
+        jobject out,
+        jbyteArray buffer) {
+    AndroidBitmapInfo info;
+    if (AndroidBitmap_getInfo(env, bitmap, &info) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        return JNI_FALSE;
+    }
+    if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888 && info.format != ANDROID_BITMAP_FORMAT_RGB_565) {
+        return JNI_FALSE;
+    }
+
+    jclass stream_class = (*env)->GetObjectClass(env, out);
+    jmethodID write = (*env)->GetMethodID(env, stream_class, "write", "([BII)V");
+    if (write == NULL) {
+        return JNI_FALSE;
+    }
+
+    size_t size = (size_t) (*env)->GetArrayLength(env, buffer);
+    JOCTET *data = malloc(size);
+    JSAMPLE *row = info.format == ANDROID_BITMAP_FORMAT_RGB_565 ? malloc((size_t) info.width * 3) : NULL;
+    if (data == NULL || (info.format == ANDROID_BITMAP_FORMAT_RGB_565 && row == NULL)) {
+        free(data);
+        free(row);
+        return JNI_FALSE;
+    }
+
+    void *pixels;
+    if (AndroidBitmap_lockPixels(env, bitmap, &pixels) != ANDROID_BITMAP_RESULT_SUCCESS) {
+        free(data);
+        free(row);
+        return JNI_FALSE;
+    }
+
+    struct jpeg_compress_struct cinfo;
+    struct error_manager err;
+    struct destination_manager dest;
+    memset(&cinfo, 0, sizeof(cinfo));
+
+    cinfo.err = jpeg_std_error(&err.pub);
+    err.pub.error_exit = error_exit;
+
+    if (setjmp(err.jump)) {
+        char message[JMSG_LENGTH_MAX];
+        err.pub.format_message((j_common_ptr) &cinfo, message);
+        jpeg_destroy_compress(&cinfo);
+
+        // exception thrown by the stream, kept aside while the bitmap is unlocked
+        jthrowable pending = (*env)->ExceptionOccurred(env);
+        (*env)->ExceptionClear(env);
+
+        free(data);
+        free(row);
+        AndroidBitmap_unlockPixels(env, bitmap);
+
+        if (pending != NULL) {
+            (*env)->Throw(env, pending);
+        } else {
+            (*env)->ThrowNew(env, (*env)->FindClass(env, "java/io/IOException"), message);
+        }
+        return JNI_FALSE;
+    }
+
+    jpeg_create_compress(&cinfo);
+
+    dest.pub.init_destination = init_destination;
+    dest.pub.empty_output_buffer = empty_output_buffer;
+    dest.pub.term_destination = term_destination;
+    dest.env = env;
+    dest.out = out;
+    dest.write = write;
+    dest.buffer = buffer;
+    dest.data = data;
+    dest.size = size;
+    cinfo.dest = &dest.pub;
+
+    cinfo.image_width = info.width;
+    cinfo.image_height = info.height;
+    if (info.format == ANDROID_BITMAP_FORMAT_RGBA_8888) {
+        // alpha is ignored, like Bitmap.compress does
+        cinfo.input_components = 4;
+        cinfo.in_color_space = JCS_EXT_RGBX;
+    } else {
+        cinfo.input_components = 3;
+        cinfo.in_color_space = JCS_RGB;
+    }
+
+    jpeg_set_defaults(&cinfo);
+    jpeg_set_quality(&cinfo, quality, TRUE);
+    cinfo.optimize_coding = TRUE;
+
+    if (full_chroma) {
+        cinfo.comp_info[0].h_samp_factor = 1;
+        cinfo.comp_info[0].v_samp_factor = 1;
+    }
+
+    if (progressive) {
+        jpeg_simple_progression(&cinfo);
+    } else {
+        // mozjpeg defaults to progressive scans
+        cinfo.num_scans = 0;
+        cinfo.scan_info = NULL;
+    }
+
+    jpeg_start_compress(&cinfo, TRUE);
+
+    while (cinfo.next_scanline < cinfo.image_height) {
+        JSAMPLE *line = (JSAMPLE *) pixels + (size_t) cinfo.next_scanline * info.stride;
+        if (row != NULL) {
+            rgb565_to_rgb((const uint16_t *) line, row, info.width);
+            line = row;
+        }
+        JSAMPROW rows[1] = {line};
+        jpeg_write_scanlines(&cinfo, rows, 1);
+    }
+
+    jpeg_finish_compress(&cinfo);
+    jpeg_destroy_compress(&cinfo);
+
+    free(data);
+    free(row);
+    AndroidBitmap_unlockPixels(env, bitmap);
+    return JNI_TRUE;
+}
@@ -0,0 +1,134 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Animated GIF or WebP read one frame at a time, used to downscale animations for the
+ * "keepAnimation" option without holding all of their frames (see {@link GifReader} and
+ * {@link WebpAnimationReader}). Frames are composited onto a canvas the caller owns, so
+ * disposal and blending of partial frames are applied the way viewers apply them.
+ */
+abstract class AnimatedImage implements Closeable {
+    // logical size of the animation, frames may cover only part of it
+    final int width;
+    final int height;
+    // 0 for animations which loop forever
+    final int loopCount;
+
+    private final InputStream in;
+
+    AnimatedImage(InputStream in, int width, int height, int loopCount) {
+        this.in = in;
+        this.width = width;
+        this.height = height;
+        this.loopCount = loopCount;
+    }
+
+    /**
+     * @return null if the image isn't an animated GIF or WebP (or has a single frame)
+     */
+    static AnimatedImage open(ImageSource source, String mimeType) throws IOException {
+        if ("image/gif".equalsIgnoreCase(mimeType)) {
+            // frames are counted up front, which only skips over their data
+            int loopCount;
+            InputStream probe = new BufferedInputStream(source.openInputStream());
+            try {
+                loopCount = GifReader.scan(probe);
+            } finally {
+                probe.close();
+            }
+            if (loopCount < 0) {
+                return null;
+            }
+            return GifReader.open(new BufferedInputStream(source.openInputStream()), loopCount);
+        }
+
+        if ("image/webp".equalsIgnoreCase(mimeType)) {
+            return WebpAnimationReader.open(new BufferedInputStream(source.openInputStream()));
+        }
+
+        return null;
+    }
+
+    /**
+     * Composites the next frame onto the canvas.
+     *
+     * @param canvas width * height ARGB pixels, holding the previous frame (transparent before
+     *               the first one)
+     * @return false when there are no more frames
+     */
+    abstract boolean readFrame(int[] canvas) throws IOException;
+
+    /**
+     * @return how long the frame read last is shown, in milliseconds
+     */
+    abstract int getFrameDuration();
+
+    /**
+     * Memory the reader needs for frames, besides the canvas.
+     */
+    abstract long getWorkingBytes();
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    InputStream getInput() {
+        return in;
+    }
+
+    static int read(InputStream in) throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException("Truncated animation");
+        }
+        return value;
+    }
+
+    static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = in.read(buffer, offset, length);
+            if (read < 0) {
+                throw new EOFException("Truncated animation");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    static void skipFully(InputStream in, long length) throws IOException {
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                read(in);
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    /**
+     * Source over blending of a non premultiplied pixel onto another.
+     */
+    static int blend(int pixel, int under) {
+        int a = pixel >>> 24;
+        if (a == 255) {
+            return pixel;
+        }
+        if (a == 0) {
+            return under;
+        }
+
+        int underA = (under >>> 24) * (255 - a) / 255;
+        int outA = a + underA;
+        int r = (((pixel >> 16) & 0xff) * a + ((under >> 16) & 0xff) * underA) / outA;
+        int g = (((pixel >> 8) & 0xff) * a + ((under >> 8) & 0xff) * underA) / outA;
+        int b = ((pixel & 0xff) * a + (under & 0xff) * underA) / outA;
+        return (outA << 24) | (r << 16) | (g << 8) | b;
+    }
+}
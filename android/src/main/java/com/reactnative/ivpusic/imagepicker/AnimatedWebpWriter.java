@@ -0,0 +1,250 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes an animated WebP frame by frame. Android only encodes still WebPs, so every frame is
+ * encoded by Bitmap.compress and its VP8/VP8L (and ALPH) chunks are moved into an ANMF chunk.
+ * Frames only cover the area which changed since the previous frame, and frames which don't
+ * change anything extend the duration of the previous one. Frames go to a scratch file as they
+ * are encoded, the file header (which holds the total size) is written in front of them at the
+ * end.
+ */
+class AnimatedWebpWriter implements Closeable {
+    private static final int FLAG_ANIMATION = 0x02;
+    private static final int FLAG_ALPHA = 0x10;
+    // frames replace the area they cover, and aren't disposed
+    private static final int FRAME_NO_BLEND = 0x02;
+    private static final int MAX_DURATION = (1 << 24) - 1;
+
+    private final int width;
+    private final int height;
+    private final int loopCount;
+    private final Bitmap.CompressFormat format;
+    private final int quality;
+
+    private final File scratchFile;
+    private final OutputStream scratch;
+    private long scratchLength;
+
+    private final int[] previous;
+    private final Bitmap frameBitmap;
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    private boolean alpha;
+    private int frames;
+
+    // last frame, written when the next one shows a change (or at the end)
+    private byte[] pending = new byte[0];
+    private int pendingLength;
+    private int pendingX;
+    private int pendingY;
+    private int pendingWidth;
+    private int pendingHeight;
+    private int pendingDuration;
+
+    /**
+     * @param loopCount how often the animation plays, 0 for forever
+     * @param quality 100 for lossless frames
+     */
+    @SuppressWarnings("deprecation")
+    AnimatedWebpWriter(File scratchFile, int width, int height, int loopCount, int quality) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.loopCount = loopCount;
+        this.quality = quality;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            format = quality >= 100 ? Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.WEBP_LOSSY;
+        } else {
+            // quality 100 is lossless for the old format
+            format = Bitmap.CompressFormat.WEBP;
+        }
+
+        this.scratchFile = scratchFile;
+        this.scratch = new FileOutputStream(scratchFile);
+        this.previous = new int[width * height];
+        this.frameBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Memory the writer needs for frames of the given size.
+     */
+    static long workingBytes(int width, int height) {
+        // previous frame, frame bitmap and its encoded data
+        return (long) width * height * 12;
+    }
+
+    /**
+     * @param pixels width * height ARGB pixels of the frame
+     */
+    void addFrame(int[] pixels, int duration) throws IOException {
+        int left = 0;
+        int top = 0;
+        int right = width;
+        int bottom = height;
+
+        if (frames > 0) {
+            // bounds of the pixels which changed
+            left = width;
+            right = 0;
+            bottom = 0;
+            top = height;
+            for (int y = 0; y < height; y++) {
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    if (pixels[offset + x] != previous[offset + x]) {
+                        left = Math.min(left, x);
+                        right = Math.max(right, x + 1);
+                        top = Math.min(top, y);
+                        bottom = y + 1;
+                    }
+                }
+            }
+
+            if (right == 0) {
+                pendingDuration = Math.min(MAX_DURATION, pendingDuration + duration);
+                return;
+            }
+            flush();
+
+            // frame offsets are stored halved
+            left &= ~1;
+            top &= ~1;
+        }
+
+        int frameWidth = right - left;
+        int frameHeight = bottom - top;
+        for (int y = top; y < bottom && !alpha; y++) {
+            for (int x = left; x < right; x++) {
+                if ((pixels[y * width + x] >>> 24) != 255) {
+                    alpha = true;
+                    break;
+                }
+            }
+        }
+
+        frameBitmap.reconfigure(frameWidth, frameHeight, Bitmap.Config.ARGB_8888);
+        frameBitmap.setPixels(pixels, top * width + left, width, 0, 0, frameWidth, frameHeight);
+        encoded.reset();
+        if (!frameBitmap.compress(format, quality, encoded)) {
+            throw new IOException("Cannot encode animation frame");
+        }
+        extractFrameData(encoded.toByteArray());
+
+        pendingX = left;
+        pendingY = top;
+        pendingWidth = frameWidth;
+        pendingHeight = frameHeight;
+        pendingDuration = Math.min(MAX_DURATION, duration);
+        System.arraycopy(pixels, 0, previous, 0, previous.length);
+        frames++;
+    }
+
+    /**
+     * Writes the animation, with the frames added so far.
+     */
+    void finish(OutputStream out) throws IOException {
+        if (frames == 0) {
+            throw new IOException("Animation has no frames");
+        }
+        flush();
+        scratch.close();
+
+        byte[] header = new byte[12 + 18 + 14];
+        WebpAnimationReader.writeFourCc(header, 0, "RIFF");
+        WebpAnimationReader.writeInt32(header, 4, (int) (header.length - 8 + scratchLength));
+        WebpAnimationReader.writeFourCc(header, 8, "WEBP");
+
+        WebpAnimationReader.writeFourCc(header, 12, "VP8X");
+        WebpAnimationReader.writeInt32(header, 16, 10);
+        header[20] = (byte) (FLAG_ANIMATION | (alpha ? FLAG_ALPHA : 0));
+        WebpAnimationReader.writeInt24(header, 24, width - 1);
+        WebpAnimationReader.writeInt24(header, 27, height - 1);
+
+        // transparent background color, then the loop count
+        WebpAnimationReader.writeFourCc(header, 30, "ANIM");
+        WebpAnimationReader.writeInt32(header, 34, 6);
+        header[42] = (byte) loopCount;
+        header[43] = (byte) (loopCount >> 8);
+        out.write(header);
+
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = new FileInputStream(scratchFile);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        frameBitmap.recycle();
+        try {
+            scratch.close();
+        } finally {
+            scratchFile.delete();
+        }
+    }
+
+    /**
+     * Keeps the ALPH, VP8 and VP8L chunks of an encoded still WebP as the pending frame data.
+     */
+    private void extractFrameData(byte[] webp) throws IOException {
+        if (webp.length < 12 || !WebpAnimationReader.isFourCc(webp, 0, "RIFF")) {
+            throw new IOException("Invalid encoded animation frame");
+        }
+
+        pendingLength = 0;
+        int offset = 12;
+        while (offset + 8 <= webp.length) {
+            int size = WebpAnimationReader.readInt32(webp, offset + 4);
+            int chunkLength = Math.min(8 + size + (size & 1), webp.length - offset);
+            if (WebpAnimationReader.isFourCc(webp, offset, "ALPH")
+                    || WebpAnimationReader.isFourCc(webp, offset, "VP8 ")
+                    || WebpAnimationReader.isFourCc(webp, offset, "VP8L")) {
+                if (pending.length < pendingLength + chunkLength + 1) {
+                    byte[] grown = new byte[Math.max(pending.length * 2, pendingLength + chunkLength + 1)];
+                    System.arraycopy(pending, 0, grown, 0, pendingLength);
+                    pending = grown;
+                }
+                System.arraycopy(webp, offset, pending, pendingLength, chunkLength);
+                pendingLength += chunkLength;
+            }
+            offset += 8 + size + (size & 1);
+        }
+
+        // chunks stay 2 byte aligned, even when the encoder left out padding at the end
+        if ((pendingLength & 1) != 0) {
+            pending[pendingLength++] = 0;
+        }
+    }
+
+    private void flush() throws IOException {
+        byte[] header = new byte[8 + 16];
+        WebpAnimationReader.writeFourCc(header, 0, "ANMF");
+        WebpAnimationReader.writeInt32(header, 4, 16 + pendingLength);
+        WebpAnimationReader.writeInt24(header, 8, pendingX / 2);
+        WebpAnimationReader.writeInt24(header, 11, pendingY / 2);
+        WebpAnimationReader.writeInt24(header, 14, pendingWidth - 1);
+        WebpAnimationReader.writeInt24(header, 17, pendingHeight - 1);
+        WebpAnimationReader.writeInt24(header, 20, pendingDuration);
+        header[23] = FRAME_NO_BLEND;
+
+        scratch.write(header);
+        scratch.write(pending, 0, pendingLength);
+        scratchLength += header.length + pendingLength;
+    }
+}
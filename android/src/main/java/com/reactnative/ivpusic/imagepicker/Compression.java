@@ -4,37 +4,77 @@ import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
 import android.media.ExifInterface;
-import android.os.Environment;
+import android.os.Build;
 import android.util.Log;
 import android.util.Pair;
 
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.UUID;
 
 /**
  * Created by ipusic on 12/27/16.
  */
 
 class Compression {
+    private static final String E_CANNOT_PROCESS_VIDEO = "E_CANNOT_PROCESS_VIDEO";
 
     File resize(
             Context context,
-            String originalImagePath,
+            ImageSource source,
             int originalWidth,
             int originalHeight,
             int maxWidth,
             int maxHeight,
             int quality
+    ) throws IOException,OutOfMemoryError {
+        OutputTarget target = OutputTarget.newImageFile(context);
+        resize(context, source, originalWidth, originalHeight, maxWidth, maxHeight, quality, DecodeProfile.DEFAULT, target);
+        return target.getFile();
+    }
+
+    Output resize(
+            Context context,
+            ImageSource source,
+            int originalWidth,
+            int originalHeight,
+            int maxWidth,
+            int maxHeight,
+            int quality,
+            DecodeProfile profile,
+            OutputTarget target
+    ) throws IOException,OutOfMemoryError {
+        return resize(context, source, originalWidth, originalHeight, maxWidth, maxHeight, quality, profile, target, null);
+    }
+
+    /**
+     * @param variants written from the same decode as the image itself (if not null). Outputs are
+     *                 written from the biggest to the smallest, each one scaled from the previous
+     */
+    Output resize(
+            Context context,
+            ImageSource source,
+            int originalWidth,
+            int originalHeight,
+            int maxWidth,
+            int maxHeight,
+            int quality,
+            DecodeProfile profile,
+            OutputTarget target,
+            List<Variant> variants
     ) throws IOException,OutOfMemoryError {
         Pair<Integer, Integer> targetDimensions =
                 this.calculateTargetDimensions(originalWidth, originalHeight, maxWidth, maxHeight);
@@ -42,44 +82,487 @@ class Compression {
         int targetWidth = targetDimensions.first;
         int targetHeight = targetDimensions.second;
 
-        Bitmap bitmap = null;
-        if (originalWidth <= maxWidth && originalHeight <= maxHeight) {
-            bitmap = BitmapFactory.decodeFile(originalImagePath);
-        } else {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inSampleSize = calculateInSampleSize(originalWidth, originalHeight, targetWidth, targetHeight);
-            bitmap = BitmapFactory.decodeFile(originalImagePath, options);
+        // decode is big enough for the biggest output
+        List<Variant> ordered = variants != null ? orderVariants(originalWidth, originalHeight, variants) : Collections.<Variant>emptyList();
+        int decodeWidth = targetWidth;
+        int decodeHeight = targetHeight;
+        if (!ordered.isEmpty() && getArea(ordered.get(0)) > (long) targetWidth * targetHeight) {
+            decodeWidth = ordered.get(0).width;
+            decodeHeight = ordered.get(0).height;
+        }
+
+        int inSampleSize = 1;
+        if (originalWidth > decodeWidth || originalHeight > decodeHeight) {
+            inSampleSize = calculateInSampleSize(originalWidth, originalHeight, decodeWidth, decodeHeight);
+        }
+
+        // decoded and scaled bitmaps are alive at the same time (or scaled and rotated ones, when
+        // orientation has to be applied to the pixels), with variants the previous output too
+        int bytesPerPixel = profile.getBytesPerPixel();
+        long requiredMemory = DecodeBudget.bitmapBytes(ceilDiv(originalWidth, inSampleSize), ceilDiv(originalHeight, inSampleSize), bytesPerPixel)
+                + DecodeBudget.bitmapBytes(decodeWidth, decodeHeight, bytesPerPixel)
+                + (ordered.isEmpty() ? 0 : DecodeBudget.bitmapBytes(decodeWidth, decodeHeight, bytesPerPixel))
+                + profile.getScalingBytes(ceilDiv(originalHeight, inSampleSize), decodeWidth)
+                + getEncodingBytes(target, targetWidth, targetHeight);
+        DecodeBudget decodeBudget = DecodeBudget.get(context);
+        long reservation = decodeBudget.acquire(requiredMemory);
+
+        PipelineTrace.begin("resize");
+        try {
+            Bitmap bitmap = source.decode(profile.newOptions(inSampleSize));
+            if (bitmap == null) {
+                throw new IOException("Cannot decode image " + source);
+            }
+
+            // Use original image exif orientation data to preserve image orientation for the resized bitmap
+            ExifInterface originalExif = source.readExif();
+            String originalOrientation = originalExif.getAttribute(ExifInterface.TAG_ORIENTATION);
+
+            Output output = null;
+            for (int i = 0; i <= ordered.size(); i++) {
+                Variant variant = i < ordered.size() ? ordered.get(i) : null;
+
+                if (output == null && (variant == null || getArea(variant) <= (long) targetWidth * targetHeight)) {
+                    bitmap = scaleFrom(bitmap, targetWidth, targetHeight, profile);
+                    output = writeImage(context, bitmap, quality, originalOrientation, target);
+                }
+
+                if (variant != null) {
+                    bitmap = scaleFrom(bitmap, variant.width, variant.height, profile);
+                    writeVariant(context, bitmap, variant, originalOrientation, target.isUprightRequired());
+                }
+            }
+            bitmap.recycle();
+
+            return output;
+        } finally {
+            decodeBudget.release(reservation);
+            PipelineTrace.end();
+        }
+    }
+
+    /**
+     * Decodes the original once, at the resolution needed by the biggest variant, and derives
+     * every smaller variant by downscaling the previous (bigger) one. Used when the image itself
+     * isn't resized (see {@link #resize} for when it is).
+     */
+    List<Variant> resizeVariants(
+            Context context,
+            ImageSource source,
+            int originalWidth,
+            int originalHeight,
+            List<Variant> variants,
+            DecodeProfile profile,
+            boolean uprightRequired
+    ) throws IOException, OutOfMemoryError {
+        List<Variant> ordered = orderVariants(originalWidth, originalHeight, variants);
+        if (ordered.isEmpty()) {
+            return ordered;
+        }
+
+        Variant largest = ordered.get(0);
+        int inSampleSize = calculateInSampleSize(originalWidth, originalHeight, largest.width, largest.height);
+
+        // decoded bitmap, plus the previous and the current variant
+        int bytesPerPixel = profile.getBytesPerPixel();
+        long requiredMemory = DecodeBudget.bitmapBytes(ceilDiv(originalWidth, inSampleSize), ceilDiv(originalHeight, inSampleSize), bytesPerPixel)
+                + 2 * DecodeBudget.bitmapBytes(largest.width, largest.height, bytesPerPixel)
+                + profile.getScalingBytes(ceilDiv(originalHeight, inSampleSize), largest.width);
+        DecodeBudget decodeBudget = DecodeBudget.get(context);
+        long reservation = decodeBudget.acquire(requiredMemory);
+
+        try {
+            Bitmap bitmap = source.decode(profile.newOptions(inSampleSize));
+            if (bitmap == null) {
+                throw new IOException("Cannot decode image " + source);
+            }
+
+            ExifInterface originalExif = source.readExif();
+            String originalOrientation = originalExif.getAttribute(ExifInterface.TAG_ORIENTATION);
+
+            for (Variant variant : ordered) {
+                bitmap = scaleFrom(bitmap, variant.width, variant.height, profile);
+                writeVariant(context, bitmap, variant, originalOrientation, uprightRequired);
+            }
+
+            bitmap.recycle();
+        } finally {
+            decodeBudget.release(reservation);
+        }
+
+        return variants;
+    }
+
+    /**
+     * Sets the dimensions of the variants for an original of the given size.
+     *
+     * @return variants ordered from the biggest to the smallest
+     */
+    private List<Variant> orderVariants(int originalWidth, int originalHeight, List<Variant> variants) {
+        List<Variant> ordered = new ArrayList<>(variants);
+        for (Variant variant : ordered) {
+            Pair<Integer, Integer> targetDimensions =
+                    this.calculateTargetDimensions(originalWidth, originalHeight, variant.maxWidth, variant.maxHeight);
+            variant.width = targetDimensions.first;
+            variant.height = targetDimensions.second;
+        }
+
+        Collections.sort(ordered, new Comparator<Variant>() {
+            @Override
+            public int compare(Variant first, Variant second) {
+                return Long.compare(getArea(second), getArea(first));
+            }
+        });
+
+        return ordered;
+    }
+
+    private static long getArea(Variant variant) {
+        return (long) variant.width * variant.height;
+    }
+
+    /**
+     * @return scaled bitmap, the given one is recycled if it isn't returned
+     */
+    private static Bitmap scaleFrom(Bitmap bitmap, int width, int height, DecodeProfile profile) {
+        Bitmap scaledBitmap = scale(bitmap, width, height, profile);
+        if (scaledBitmap != bitmap) {
+            bitmap.recycle();
         }
+        return scaledBitmap;
+    }
+
+    private void writeVariant(Context context, Bitmap bitmap, Variant variant, String orientation, boolean uprightRequired) throws IOException {
+        OutputTarget target = OutputTarget.newImageFile(context);
+        if (uprightRequired) {
+            target.requireUpright();
+        }
+        Output output = writeJpeg(context, bitmap, variant.quality, orientation, target);
+        variant.file = target.getFile();
+        variant.width = output.width;
+        variant.height = output.height;
+        variant.upright = output.upright;
+    }
+
+    /**
+     * Decodes only the requested region of the original (subsampled for the requested output
+     * size), and writes it upright, scaled to exactly targetWidth x targetHeight.
+     *
+     * @param region region in raw (not rotated) pixel coordinates of the original
+     * @param targetWidth output width, after orientation is applied
+     * @param targetHeight output height, after orientation is applied
+     */
+    Output cropRegion(
+            Context context,
+            ImageSource source,
+            Rect region,
+            int orientation,
+            int targetWidth,
+            int targetHeight,
+            int quality,
+            DecodeProfile profile,
+            OutputTarget target
+    ) throws IOException, OutOfMemoryError {
+        boolean transposed = isTransposed(orientation);
+        int rawTargetWidth = transposed ? targetHeight : targetWidth;
+        int rawTargetHeight = transposed ? targetWidth : targetHeight;
+
+        BitmapFactory.Options options = profile.newOptions(
+                calculateInSampleSize(region.width(), region.height(), rawTargetWidth, rawTargetHeight));
+
+        // decoded region, scaled bitmap and its rotated copy
+        int bytesPerPixel = profile.getBytesPerPixel();
+        long requiredMemory = DecodeBudget.bitmapBytes(ceilDiv(region.width(), options.inSampleSize), ceilDiv(region.height(), options.inSampleSize), bytesPerPixel)
+                + 2 * DecodeBudget.bitmapBytes(targetWidth, targetHeight, bytesPerPixel)
+                + profile.getScalingBytes(ceilDiv(region.height(), options.inSampleSize), rawTargetWidth)
+                + getEncodingBytes(target, targetWidth, targetHeight);
+        DecodeBudget decodeBudget = DecodeBudget.get(context);
+        long reservation = decodeBudget.acquire(requiredMemory);
+
+        try {
+            BitmapRegionDecoder decoder = source.newRegionDecoder();
+            Bitmap bitmap;
+            try {
+                bitmap = decoder.decodeRegion(region, options);
+            } finally {
+                decoder.recycle();
+            }
 
-        // Use original image exif orientation data to preserve image orientation for the resized bitmap
-        ExifInterface originalExif = new ExifInterface(originalImagePath);
-        String originalOrientation = originalExif.getAttribute(ExifInterface.TAG_ORIENTATION);
+            if (bitmap == null) {
+                throw new IOException("Cannot decode image region " + source);
+            }
 
-        bitmap = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
+            Bitmap scaledBitmap = scale(bitmap, rawTargetWidth, rawTargetHeight, profile);
+            if (scaledBitmap != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaledBitmap;
+
+            Matrix matrix = getOrientationMatrix(orientation);
+            if (matrix != null) {
+                Bitmap orientedBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+                if (orientedBitmap != bitmap) {
+                    bitmap.recycle();
+                }
+                bitmap = orientedBitmap;
+            }
 
-        File imageDirectory = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+            Output output = writeImage(context, bitmap, quality, null, target);
+            bitmap.recycle();
 
-        if (!imageDirectory.exists()) {
-            Log.d("image-crop-picker", "Pictures Directory is not existing. Will create this directory.");
-            imageDirectory.mkdirs();
+            return output;
+        } finally {
+            decodeBudget.release(reservation);
         }
+    }
 
-        File resizeImageFile = new File(imageDirectory, UUID.randomUUID() + ".jpg");
+    /**
+     * @return scaled bitmap, or the same one if it already has the requested size
+     */
+    private static Bitmap scale(Bitmap bitmap, int width, int height, DecodeProfile profile) {
+        PipelineTrace.begin("scale");
+        try {
+            if (profile.filter == null) {
+                return Bitmap.createScaledBitmap(bitmap, width, height, true);
+            }
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                return bitmap;
+            }
+            return Resampler.scale(bitmap, width, height, profile.filter);
+        } finally {
+            PipelineTrace.end();
+        }
+    }
 
-        OutputStream os = new BufferedOutputStream(new FileOutputStream(resizeImageFile));
-        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, os);
+    static boolean isTransposed(int orientation) {
+        return orientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_90
+                || orientation == ExifInterface.ORIENTATION_TRANSVERSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_270;
+    }
 
-        // Don't set unnecessary exif attribute
-        if (shouldSetOrientation(originalOrientation)) {
-            ExifInterface exif = new ExifInterface(resizeImageFile.getAbsolutePath());
-            exif.setAttribute(ExifInterface.TAG_ORIENTATION, originalOrientation);
-            exif.saveAttributes();
+    /**
+     * Maps a rectangle given in the displayed (oriented) image onto raw pixel coordinates.
+     */
+    static Rect toRawRect(Rect rect, int orientation, int rawWidth, int rawHeight) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                return new Rect(rawWidth - rect.right, rect.top, rawWidth - rect.left, rect.bottom);
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return new Rect(rawWidth - rect.right, rawHeight - rect.bottom, rawWidth - rect.left, rawHeight - rect.top);
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return new Rect(rect.left, rawHeight - rect.bottom, rect.right, rawHeight - rect.top);
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return new Rect(rect.top, rect.left, rect.bottom, rect.right);
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return new Rect(rect.top, rawHeight - rect.right, rect.bottom, rawHeight - rect.left);
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return new Rect(rawWidth - rect.bottom, rawHeight - rect.right, rawWidth - rect.top, rawHeight - rect.left);
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return new Rect(rawWidth - rect.bottom, rect.left, rawWidth - rect.top, rect.right);
+            default:
+                return new Rect(rect.left, rect.top, rect.right, rect.bottom);
         }
+    }
 
-        os.close();
-        bitmap.recycle();
+    /**
+     * @return matrix which turns raw pixels upright, or null if they already are
+     */
+    static Matrix getOrientationMatrix(int orientation) {
+        Matrix matrix = new Matrix();
+
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                return matrix;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                return matrix;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                return matrix;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                return matrix;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                return matrix;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                return matrix;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                return matrix;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Writes a JPEG, or a palette PNG / WebP if the target asks for one.
+     */
+    private Output writeImage(Context context, Bitmap bitmap, int quality, String orientation, OutputTarget target) throws IOException {
+        PipelineTrace.begin("encode");
+        try {
+            PaletteQuantizer quantizer = target.getPaletteQuantizer();
+            if (quantizer != null) {
+                return writePng(context, bitmap, orientation, quantizer, target);
+            }
+            if (target.isWebp()) {
+                return writeWebp(context, bitmap, quality, orientation, target);
+            }
+            return writeJpeg(context, bitmap, quality, orientation, target);
+        } finally {
+            PipelineTrace.end();
+        }
+    }
 
-        return resizeImageFile;
+    /**
+     * Memory needed to encode an image of the given size, besides the bitmap.
+     */
+    private static long getEncodingBytes(OutputTarget target, int width, int height) {
+        return target.getPaletteQuantizer() != null ? PaletteQuantizer.workingBytes(width, height) : 0;
+    }
+
+    private Output writeJpeg(Context context, Bitmap bitmap, int quality, String orientation, OutputTarget target) throws IOException {
+        Bitmap orientedBitmap = bitmap;
+        boolean upright = !shouldSetOrientation(orientation);
+
+        if (!upright && target.isUprightRequired()) {
+            Matrix matrix = getOrientationMatrix(Integer.parseInt(orientation));
+            if (matrix != null) {
+                orientedBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+            }
+            upright = true;
+        }
+
+        int width = orientedBitmap.getWidth();
+        int height = orientedBitmap.getHeight();
+
+        try {
+            OutputStream os = target.open(context);
+
+            // Don't set unnecessary exif attribute. Otherwise it is written along with the encoded
+            // image, so the file isn't rewritten afterwards (and streams get it too)
+            if (!upright) {
+                os = ExifSegment.inject(os, ExifSegment.forOrientation(Integer.parseInt(orientation)));
+            }
+
+            try {
+                NativeJpegEncoder encoder = target.getJpegEncoder();
+                if (encoder == null || !encoder.compress(orientedBitmap, quality, os)) {
+                    orientedBitmap.compress(Bitmap.CompressFormat.JPEG, quality, os);
+                }
+            } finally {
+                os.close();
+            }
+        } finally {
+            if (orientedBitmap != bitmap) {
+                orientedBitmap.recycle();
+            }
+        }
+
+        long size = target.isFile() ? target.getFile().length() : target.getWrittenBytes();
+        return new Output(target, size, width, height, "image/jpeg", upright);
+    }
+
+    /**
+     * PNG has no orientation tag readers agree on, so orientation is always applied to the pixels.
+     */
+    private Output writePng(Context context, Bitmap bitmap, String orientation, PaletteQuantizer quantizer, OutputTarget target) throws IOException {
+        Bitmap orientedBitmap = applyOrientation(bitmap, orientation);
+        PaletteQuantizer.Result image;
+        try {
+            image = quantizer.quantize(orientedBitmap);
+        } finally {
+            if (orientedBitmap != bitmap) {
+                orientedBitmap.recycle();
+            }
+        }
+
+        target = target.withExtension("png");
+        OutputStream os = target.open(context);
+        try {
+            PngWriter.write(image, os);
+        } finally {
+            os.close();
+        }
+
+        long size = target.isFile() ? target.getFile().length() : target.getWrittenBytes();
+        return new Output(target, size, image.width, image.height, "image/png", true);
+    }
+
+    /**
+     * Lossy WebP, which unlike JPEG keeps alpha. Orientation is applied to the pixels, like for PNG.
+     */
+    @SuppressWarnings("deprecation")
+    private Output writeWebp(Context context, Bitmap bitmap, int quality, String orientation, OutputTarget target) throws IOException {
+        Bitmap orientedBitmap = applyOrientation(bitmap, orientation);
+        int width = orientedBitmap.getWidth();
+        int height = orientedBitmap.getHeight();
+
+        // before R, WEBP is lossy only below quality 100
+        boolean lossyFormat = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+        Bitmap.CompressFormat format = lossyFormat ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+
+        target = target.withExtension("webp");
+        try {
+            OutputStream os = target.open(context);
+            try {
+                orientedBitmap.compress(format, lossyFormat ? quality : Math.min(quality, 99), os);
+            } finally {
+                os.close();
+            }
+        } finally {
+            if (orientedBitmap != bitmap) {
+                orientedBitmap.recycle();
+            }
+        }
+
+        long size = target.isFile() ? target.getFile().length() : target.getWrittenBytes();
+        return new Output(target, size, width, height, "image/webp", true);
+    }
+
+    /**
+     * @return upright copy of the bitmap, or the same one if it already is
+     */
+    private Bitmap applyOrientation(Bitmap bitmap, String orientation) {
+        if (!shouldSetOrientation(orientation)) {
+            return bitmap;
+        }
+
+        Matrix matrix = getOrientationMatrix(Integer.parseInt(orientation));
+        return matrix != null ? Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true) : bitmap;
+    }
+
+    /**
+     * Heavily subsampled decode used for image analysis. Returned bitmap is at least
+     * minWidth x minHeight (unless the image is smaller), but usually not much bigger.
+     */
+    Bitmap decodeThumbnail(Context context, ImageSource source, BitmapFactory.Options bounds, int minWidth, int minHeight) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, minWidth, minHeight);
+
+        DecodeBudget decodeBudget = DecodeBudget.get(context);
+        long reservation = decodeBudget.acquire(DecodeBudget.bitmapBytes(
+                ceilDiv(bounds.outWidth, options.inSampleSize), ceilDiv(bounds.outHeight, options.inSampleSize), 4));
+
+        try {
+            Bitmap bitmap = source.decode(options);
+            if (bitmap == null) {
+                throw new IOException("Cannot decode image " + source);
+            }
+
+            return bitmap;
+        } finally {
+            decodeBudget.release(reservation);
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
     }
 
     private int calculateInSampleSize(int originalWidth, int originalHeight, int requestedWidth, int requestedHeight) {
@@ -101,11 +584,18 @@ class Compression {
     }
 
     private boolean shouldSetOrientation(String orientation) {
-        return !orientation.equals(String.valueOf(ExifInterface.ORIENTATION_NORMAL))
+        return orientation != null
+                && !orientation.equals(String.valueOf(ExifInterface.ORIENTATION_NORMAL))
                 && !orientation.equals(String.valueOf(ExifInterface.ORIENTATION_UNDEFINED));
     }
 
-    File compressImage(final Context context, final ReadableMap options, final String originalImagePath, final BitmapFactory.Options bitmapOptions) throws IOException,OutOfMemoryError {
+    /**
+     * @param target where the compressed image is written. Original file is returned when no
+     *               compression is needed, unless the target was supplied by the caller.
+     * @param variants written from the same decode when the image is resized (may be null). They
+     *                 are left without a file when the original or an animation is written
+     */
+    Output compressImage(final Context context, final ReadableMap options, final ImageSource source, final BitmapFactory.Options bitmapOptions, final OutputTarget target, final List<Variant> variants) throws IOException,OutOfMemoryError {
         Integer maxWidth = options.hasKey("compressImageMaxWidth") ? options.getInt("compressImageMaxWidth") : null;
         Integer maxHeight = options.hasKey("compressImageMaxHeight") ? options.getInt("compressImageMaxHeight") : null;
         Double quality = options.hasKey("compressImageQuality") ? options.getDouble("compressImageQuality") : null;
@@ -117,24 +607,335 @@ class Compression {
         List knownMimes = Arrays.asList("image/jpeg", "image/jpg", "image/png", "image/gif", "image/tiff");
         boolean isKnownMimeType = (bitmapOptions.outMimeType != null && knownMimes.contains(bitmapOptions.outMimeType.toLowerCase()));
 
-        if (isLossLess && useOriginalWidth && useOriginalHeight && isKnownMimeType) {
+        boolean isAuto = options.hasKey("compressImageFormat") && FormatSelector.AUTO.equals(options.getString("compressImageFormat"));
+
+        // converting to another format is what was asked for, even at the original size
+        boolean isConverted = target.getPaletteQuantizer() != null || isAuto;
+
+        if (isLossLess && useOriginalWidth && useOriginalHeight && isKnownMimeType && !isConverted) {
             Log.d("image-crop-picker", "Skipping image compression");
-            return new File(originalImagePath);
+            return keepOriginal(context, source, bitmapOptions, target);
         }
 
         Log.d("image-crop-picker", "Image compression activated");
 
         // compression quality
         int targetQuality = quality != null ? (int) (quality * 100) : 100;
+
+        boolean keepAnimation = options.hasKey("keepAnimation") && options.getBoolean("keepAnimation");
+        AnimatedImage animation = keepAnimation ? AnimatedImage.open(source, bitmapOptions.outMimeType) : null;
+        if (animation != null) {
+            if (isLossLess && useOriginalWidth && useOriginalHeight) {
+                animation.close();
+                return keepOriginal(context, source, bitmapOptions, target);
+            }
+            return resizeAnimation(context, animation,
+                    maxWidth != null ? maxWidth : animation.width, maxHeight != null ? maxHeight : animation.height,
+                    targetQuality, DecodeProfile.fromOptions(options, bitmapOptions.outMimeType), target);
+        }
+
+        if (isAuto) {
+            targetQuality = selectFormat(context, options, source, bitmapOptions, quality != null ? targetQuality : null, target).quality;
+        }
         Log.d("image-crop-picker", "Compressing image with quality " + targetQuality);
 
         if (maxWidth == null) maxWidth = bitmapOptions.outWidth;
         if (maxHeight == null) maxHeight = bitmapOptions.outHeight;
 
-        return resize(context, originalImagePath, bitmapOptions.outWidth, bitmapOptions.outHeight, maxWidth, maxHeight, targetQuality);
+        DecodeProfile profile = DecodeProfile.fromOptions(options, bitmapOptions.outMimeType);
+        return resize(context, source, bitmapOptions.outWidth, bitmapOptions.outHeight, maxWidth, maxHeight, targetQuality, profile, target, variants);
     }
 
-    private Pair<Integer, Integer> calculateTargetDimensions(int currentWidth, int currentHeight, int maxWidth, int maxHeight) {
+    /**
+     * Downscales an animated GIF or WebP to an animated WebP for the "keepAnimation" option.
+     * Frames are composited onto a canvas of the original size one at a time and scaled into a
+     * reused buffer, so memory doesn't depend on the number of frames.
+     */
+    private Output resizeAnimation(
+            Context context,
+            AnimatedImage animation,
+            int maxWidth,
+            int maxHeight,
+            int quality,
+            DecodeProfile profile,
+            OutputTarget target
+    ) throws IOException {
+        try {
+            Pair<Integer, Integer> targetDimensions =
+                    this.calculateTargetDimensions(animation.width, animation.height, maxWidth, maxHeight);
+            int targetWidth = targetDimensions.first;
+            int targetHeight = targetDimensions.second;
+            boolean scaled = targetWidth != animation.width || targetHeight != animation.height;
+            // frames are scaled as pixel arrays, without a bitmap to hand to createScaledBitmap
+            Resampler.Filter filter = profile.filter != null ? profile.filter : Resampler.Filter.BILINEAR;
+
+            long requiredMemory = DecodeBudget.bitmapBytes(animation.width, animation.height, 4)
+                    + animation.getWorkingBytes()
+                    + AnimatedWebpWriter.workingBytes(targetWidth, targetHeight);
+            if (scaled) {
+                requiredMemory += Resampler.workingBytes(animation.height, targetWidth)
+                        + DecodeBudget.bitmapBytes(targetWidth, targetHeight, 4);
+            }
+            DecodeBudget decodeBudget = DecodeBudget.get(context);
+            long reservation = decodeBudget.acquire(requiredMemory);
+
+            try {
+                int[] canvas = new int[animation.width * animation.height];
+                int[] frame = scaled ? new int[targetWidth * targetHeight] : canvas;
+                int[] intermediate = scaled ? new int[targetWidth * animation.height] : null;
+
+                File scratch = File.createTempFile("animation", ".webp", context.getCacheDir());
+                AnimatedWebpWriter writer = new AnimatedWebpWriter(scratch, targetWidth, targetHeight, animation.loopCount, quality);
+                try {
+                    while (animation.readFrame(canvas)) {
+                        if (scaled) {
+                            Resampler.scale(canvas, animation.width, animation.height, frame, targetWidth, targetHeight, filter, intermediate);
+                        }
+                        writer.addFrame(frame, animation.getFrameDuration());
+                    }
+
+                    target = target.withExtension("webp");
+                    OutputStream os = target.open(context);
+                    try {
+                        writer.finish(os);
+                    } finally {
+                        os.close();
+                    }
+                } finally {
+                    writer.close();
+                }
+            } finally {
+                decodeBudget.release(reservation);
+            }
+
+            long size = target.isFile() ? target.getFile().length() : target.getWrittenBytes();
+            return new Output(target, size, targetWidth, targetHeight, "image/webp", true);
+        } finally {
+            animation.close();
+        }
+    }
+
+    /**
+     * Analyses a small decode of the image for "compressImageFormat": "auto" and sets the target
+     * up for the format picked. The decision is kept on the target, so it can be reported.
+     *
+     * @param quality requested quality, or null if none was
+     */
+    private FormatSelector.Decision selectFormat(
+            Context context,
+            ReadableMap options,
+            ImageSource source,
+            BitmapFactory.Options bitmapOptions,
+            Integer quality,
+            OutputTarget target
+    ) throws IOException {
+        long start = System.nanoTime();
+        Bitmap thumbnail = decodeThumbnail(context, source, bitmapOptions, FormatSelector.ANALYSIS_SIZE, FormatSelector.ANALYSIS_SIZE);
+        FormatSelector.Decision decision;
+        try {
+            decision = FormatSelector.decide(thumbnail, quality, start);
+        } finally {
+            thumbnail.recycle();
+        }
+
+        if (FormatSelector.FORMAT_PNG8.equals(decision.format)) {
+            target.setPaletteQuantizer(PaletteQuantizer.withSettings(options));
+        } else if (FormatSelector.FORMAT_WEBP.equals(decision.format)) {
+            target.useWebp();
+        }
+        target.setFormatDecision(decision);
+
+        Log.d("image-crop-picker", "Selected " + decision.format + " with quality " + decision.quality
+                + " in " + (decision.analysisNanos / 1000000) + "ms");
+        return decision;
+    }
+
+    /**
+     * Image which is already final is returned as it is, or copied into the target if it was
+     * supplied by the caller. Sources which aren't local files are copied into the cache only
+     * here, when the unmodified original is what the caller gets back. JPEGs with metadata to
+     * strip or redact are always copied, with metadata rewritten on the way. If the target requires
+     * upright pixels, oriented originals are transformed instead (losslessly when possible).
+     */
+    Output keepOriginal(final Context context, final ImageSource source, final BitmapFactory.Options bitmapOptions, OutputTarget target) throws IOException {
+        if (target.isUprightRequired()) {
+            int orientation = source.readExif().getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            if (orientation != ExifInterface.ORIENTATION_NORMAL && orientation != ExifInterface.ORIENTATION_UNDEFINED) {
+                Rect region = new Rect(0, 0, bitmapOptions.outWidth, bitmapOptions.outHeight);
+                Output output = isJpeg(bitmapOptions.outMimeType) ? transformJpeg(context, source, bitmapOptions, region, orientation, target) : null;
+                if (output == null) {
+                    Log.d("image-crop-picker", "Lossless transform not possible, re-encoding " + source);
+                    output = resize(context, source, bitmapOptions.outWidth, bitmapOptions.outHeight,
+                            bitmapOptions.outWidth, bitmapOptions.outHeight, 100, DecodeProfile.DEFAULT, target);
+                }
+                return output;
+            }
+        }
+
+        // metadata can only be rewritten while the original is copied
+        MetadataFilter metadataFilter = isJpeg(bitmapOptions.outMimeType) ? target.getMetadataFilter() : null;
+
+        if (!target.isCallerSupplied() && metadataFilter == null) {
+            if (source.isFile()) {
+                File original = source.getFile();
+                return new Output(null, original, original.length(), bitmapOptions.outWidth, bitmapOptions.outHeight, bitmapOptions.outMimeType, false);
+            }
+
+            target = target.withFile(OutputTarget.newCacheFile(context, bitmapOptions.outMimeType));
+        }
+
+        PipelineTrace.begin("importCopy");
+        try {
+            target.copyFrom(context, source, metadataFilter);
+        } finally {
+            PipelineTrace.end();
+        }
+        long size = target.isFile() ? target.getFile().length() : target.getWrittenBytes();
+        return new Output(target, size, bitmapOptions.outWidth, bitmapOptions.outHeight, bitmapOptions.outMimeType, false);
+    }
+
+    /**
+     * Applies orientation to a region of a baseline JPEG without decoding its pixels (see
+     * {@link JpegTransform}). Output is upright and keeps metadata of the original, with its exif
+     * orientation reset.
+     *
+     * @param bounds dimensions of the original, for reserving decode memory before it is read
+     * @param region region in raw (not rotated) pixel coordinates of the original
+     * @return null if it can't be done losslessly (not a baseline JPEG, region not aligned to
+     * MCU boundaries...), callers decode and re-encode instead
+     */
+    Output transformJpeg(Context context, ImageSource source, BitmapFactory.Options bounds, Rect region, int orientation, OutputTarget target) throws IOException {
+        // the encoded file is held for the whole transform, while its coefficients are only known
+        // once its frame is read, so their upper bound is reserved with it and the rest given back
+        DecodeBudget decodeBudget = DecodeBudget.get(context);
+        long reservation = decodeBudget.acquire(source.length() + JpegImage.getMaxCoefficientBytes(bounds.outWidth, bounds.outHeight));
+
+        try {
+            byte[] data = source.readBytes();
+            JpegImage frame = JpegImage.readFrame(data);
+            JpegTransform transform = JpegTransform.forOrientation(orientation);
+            if (frame == null || !transform.isPerfect(frame, region.left, region.top, region.width(), region.height())) {
+                return null;
+            }
+
+            long requiredMemory = data.length + frame.getCoefficientBytes();
+            if (requiredMemory < reservation) {
+                decodeBudget.release(reservation - requiredMemory);
+                reservation = requiredMemory;
+            }
+
+            JpegImage image = JpegImage.read(data);
+            if (image == null) {
+                return null;
+            }
+
+            JpegImage transformed = transform.apply(image, region.left, region.top, region.width(), region.height());
+            JpegTransform.resetOrientation(transformed);
+            if (target.getMetadataFilter() != null) {
+                target.getMetadataFilter().filter(transformed.segments);
+            }
+
+            OutputStream os = target.open(context);
+            try {
+                JpegWriter.write(transformed, os);
+            } finally {
+                os.close();
+            }
+
+            long size = target.isFile() ? target.getFile().length() : target.getWrittenBytes();
+            return new Output(target, size, transformed.width, transformed.height, "image/jpeg", true);
+        } finally {
+            decodeBudget.release(reservation);
+        }
+    }
+
+    static boolean isJpeg(String mimeType) {
+        return "image/jpeg".equalsIgnoreCase(mimeType) || "image/jpg".equalsIgnoreCase(mimeType);
+    }
+
+    /**
+     * Encoded image and what is known about it without decoding it again.
+     */
+    static class Output {
+        // null when the original file is returned, nothing has been written for it
+        final OutputTarget target;
+        // set when the image is a local file (it isn't for caller supplied Uris and descriptors)
+        final File file;
+        final long size;
+        final int width;
+        final int height;
+        final String mime;
+        // false when width and height are raw dimensions and exif orientation still applies
+        final boolean upright;
+
+        Output(OutputTarget target, long size, int width, int height, String mime, boolean upright) {
+            this(target, target.getFile(), size, width, height, mime, upright);
+        }
+
+        Output(OutputTarget target, File file, long size, int width, int height, String mime, boolean upright) {
+            this.target = target;
+            this.file = file;
+            this.size = size;
+            this.width = width;
+            this.height = height;
+            this.mime = mime;
+            this.upright = upright;
+        }
+
+        /**
+         * @return path returned to JS, null for file descriptors
+         */
+        String getLocation() {
+            return file != null ? "file://" + file.getPath() : target.getLocation();
+        }
+    }
+
+    /**
+     * Builds variants requested through the "variants" option, or returns null if there are none.
+     */
+    List<Variant> getVariants(final ReadableMap options) {
+        if (!options.hasKey("variants") || options.isNull("variants")) {
+            return null;
+        }
+
+        Double defaultQuality = options.hasKey("compressImageQuality") ? options.getDouble("compressImageQuality") : null;
+        ReadableArray requested = options.getArray("variants");
+        List<Variant> variants = new ArrayList<>(requested.size());
+
+        for (int i = 0; i < requested.size(); i++) {
+            ReadableMap variant = requested.getMap(i);
+            String name = variant.hasKey("name") ? variant.getString("name") : null;
+            int maxWidth = variant.hasKey("maxWidth") ? variant.getInt("maxWidth") : Integer.MAX_VALUE;
+            int maxHeight = variant.hasKey("maxHeight") ? variant.getInt("maxHeight") : Integer.MAX_VALUE;
+            Double quality = variant.hasKey("quality") ? variant.getDouble("quality") : defaultQuality;
+
+            variants.add(new Variant(name, maxWidth, maxHeight, quality != null ? (int) (quality * 100) : 100));
+        }
+
+        return variants;
+    }
+
+    static class Variant {
+        final String name;
+        final int maxWidth;
+        final int maxHeight;
+        final int quality;
+
+        File file;
+        int width;
+        int height;
+        // false when width and height are raw dimensions and exif orientation still applies
+        boolean upright;
+
+        Variant(String name, int maxWidth, int maxHeight, int quality) {
+            this.name = name;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.quality = quality;
+        }
+    }
+
+    Pair<Integer, Integer> calculateTargetDimensions(int currentWidth, int currentHeight, int maxWidth, int maxHeight) {
         int width = currentWidth;
         int height = currentHeight;
 
@@ -153,9 +954,29 @@ class Compression {
         return Pair.create(width, height);
     }
 
-    synchronized void compressVideo(final Activity activity, final ReadableMap options, final String originalVideo, final String compressedVideo, final Promise promise) {
+    // no lock, trims of a multi-video selection run in parallel and VideoTrimmer keeps no shared state
+    void compressVideo(final Activity activity, final ReadableMap options, final String originalVideo, final String compressedVideo, final Promise promise) {
         // todo: video compression
         // failed attempt 1: ffmpeg => slow and licensing issues
-        promise.resolve(originalVideo);
+        VideoTrimmer trimmer;
+        try {
+            trimmer = VideoTrimmer.fromOptions(options);
+        } catch (IllegalArgumentException e) {
+            promise.reject(E_CANNOT_PROCESS_VIDEO, e.getMessage());
+            return;
+        }
+
+        if (trimmer == null) {
+            promise.resolve(originalVideo);
+            return;
+        }
+
+        try {
+            trimmer.trim(originalVideo, compressedVideo);
+            promise.resolve(compressedVideo);
+        } catch (IOException e) {
+            Log.e("image-crop-picker", "Cannot trim video " + originalVideo, e);
+            promise.reject(E_CANNOT_PROCESS_VIDEO, e.getMessage());
+        }
     }
 }
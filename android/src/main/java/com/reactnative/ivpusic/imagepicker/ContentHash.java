@@ -0,0 +1,53 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of result files, returned as "hash" so uploads can be deduplicated without reading
+ * the files again from JS. Usually computed while the bytes are written.
+ */
+class ContentHash {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Android version provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the file, for results nothing has been written for (e.g. unmodified originals).
+     */
+    static String of(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            is.close();
+        }
+
+        return toHex(digest.digest());
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,113 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Admission control for decoded pixel buffers.
+ *
+ * Every decode/encode reserves the estimated size of the bitmaps it is going to allocate and
+ * blocks until that much of the budget is free. Large devices can run several decodes at once,
+ * small ones fall back to running them one after another instead of running out of memory.
+ */
+class DecodeBudget {
+    private static DecodeBudget instance;
+
+    private final long capacity;
+    private long reserved = 0;
+    // only this share of the capacity is handed out while the system is short on memory
+    private int divisor = 1;
+
+    static synchronized DecodeBudget get(Context context) {
+        if (instance == null) {
+            instance = new DecodeBudget(computeCapacity(context));
+            Log.d("image-crop-picker", "Decode budget is " + (instance.capacity / (1024 * 1024)) + "MB");
+        }
+
+        return instance;
+    }
+
+    DecodeBudget(long capacity) {
+        this.capacity = capacity;
+    }
+
+    private static long computeCapacity(Context context) {
+        long heapLimit = Runtime.getRuntime().maxMemory();
+
+        // before Oreo bitmap pixels are allocated on the java heap, so the heap limit is the budget
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return heapLimit / 2;
+        }
+
+        ActivityManager activityManager = (ActivityManager) context.getApplicationContext().getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return heapLimit / 2;
+        }
+
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+
+        long ramShare = memoryInfo.totalMem / (activityManager.isLowRamDevice() ? 32 : 16);
+        return Math.max(heapLimit / 2, ramShare);
+    }
+
+    /**
+     * Estimated size of a bitmap with given dimensions.
+     */
+    static long bitmapBytes(int width, int height, int bytesPerPixel) {
+        return (long) width * height * bytesPerPixel;
+    }
+
+    /**
+     * Blocks until requested amount of memory can be reserved. Requests bigger than the whole
+     * budget are granted once nothing else is running, so they are never starved.
+     *
+     * @return reserved amount which should be passed to {@link #release(long)}
+     */
+    synchronized long acquire(long bytes) throws InterruptedIOException {
+        long request = Math.max(0, Math.min(bytes, getCapacity()));
+
+        if (reserved > 0 && reserved + request > getCapacity()) {
+            PipelineTrace.begin("waitForDecodeBudget");
+            try {
+                while (reserved > 0 && reserved + request > getCapacity()) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for decode memory");
+            } finally {
+                PipelineTrace.end();
+            }
+        }
+
+        reserved += request;
+        return request;
+    }
+
+    synchronized void release(long bytes) {
+        reserved = Math.max(0, reserved - bytes);
+        notifyAll();
+    }
+
+    /**
+     * Hands out only 1 / divisor of the capacity. Reservations which are already held stay
+     * valid, new ones wait until the smaller budget has room for them.
+     */
+    synchronized void setDivisor(int divisor) {
+        this.divisor = Math.max(1, divisor);
+        notifyAll();
+    }
+
+    synchronized long getCapacity() {
+        return capacity / divisor;
+    }
+
+    synchronized long getReserved() {
+        return reserved;
+    }
+}
@@ -0,0 +1,67 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.facebook.react.bridge.ReadableMap;
+
+/**
+ * Pixel format images are decoded to before they are re-encoded, selected by the "decodeProfile"
+ * option. The "memoryLean" profile decodes opaque images as RGB_565, which halves the size of
+ * every decoded bitmap at the cost of some color precision (optionally hidden by dithering).
+ * Also carries the "resizeFilter" decoded bitmaps are scaled with.
+ */
+class DecodeProfile {
+    static final DecodeProfile DEFAULT = new DecodeProfile(Bitmap.Config.ARGB_8888, false, null);
+
+    private static final String MEMORY_LEAN = "memoryLean";
+
+    final Bitmap.Config config;
+    final boolean dither;
+    // null for bilinear createScaledBitmap
+    final Resampler.Filter filter;
+
+    private DecodeProfile(Bitmap.Config config, boolean dither, Resampler.Filter filter) {
+        this.config = config;
+        this.dither = dither;
+        this.filter = filter;
+    }
+
+    /**
+     * @param mimeType mime type of the source, only sources which can't have alpha are decoded
+     *                 with the reduced config
+     */
+    static DecodeProfile fromOptions(ReadableMap options, String mimeType) {
+        Resampler.Filter filter = Resampler.Filter.fromName(options.hasKey("resizeFilter") ? options.getString("resizeFilter") : null);
+        boolean memoryLean = options.hasKey("decodeProfile") && MEMORY_LEAN.equals(options.getString("decodeProfile"));
+        if (!memoryLean || !isOpaque(mimeType)) {
+            return filter == null ? DEFAULT : new DecodeProfile(Bitmap.Config.ARGB_8888, false, filter);
+        }
+
+        boolean dither = options.hasKey("decodeDither") && options.getBoolean("decodeDither");
+        return new DecodeProfile(Bitmap.Config.RGB_565, dither, filter);
+    }
+
+    private static boolean isOpaque(String mimeType) {
+        return "image/jpeg".equalsIgnoreCase(mimeType) || "image/jpg".equalsIgnoreCase(mimeType);
+    }
+
+    /**
+     * Memory needed to scale a decoded bitmap, besides the bitmap and the scaled one.
+     */
+    long getScalingBytes(int decodedHeight, int width) {
+        return filter != null ? Resampler.workingBytes(decodedHeight, width) : 0;
+    }
+
+    int getBytesPerPixel() {
+        return config == Bitmap.Config.RGB_565 ? 2 : 4;
+    }
+
+    BitmapFactory.Options newOptions(int inSampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = inSampleSize;
+        options.inPreferredConfig = config;
+        options.inDither = dither;
+        return options;
+    }
+}
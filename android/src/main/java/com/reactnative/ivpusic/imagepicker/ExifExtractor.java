@@ -15,25 +15,34 @@ import static android.media.ExifInterface.*;
 
 class ExifExtractor {
 
-    static WritableMap extract(String path) throws IOException {
+    /**
+     * @param includeLocation false to leave out GPS attributes (e.g. when the returned file has
+     *                        its location redacted)
+     */
+    static WritableMap extract(ImageSource source, boolean includeLocation) throws IOException {
         WritableMap exifData = new WritableNativeMap();
 
         List<String> attributes = getBasicAttributes();
+        if (includeLocation) {
+            attributes.addAll(getLocationAttributes());
+        }
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             attributes.addAll(getLevel23Attributes());
         }
 
-        ExifInterface exif = new ExifInterface(path);
+        ExifInterface exif = source.readExif();
 
-        try {
-            GeoDegree geoDegree = new GeoDegree(exif);
-            if (geoDegree.getLatitude() != null && geoDegree.getLongitude() != null) {
-                exifData.putDouble("Latitude", geoDegree.getLatitude());
-                exifData.putDouble("Longitude", geoDegree.getLongitude());
+        if (includeLocation) {
+            try {
+                GeoDegree geoDegree = new GeoDegree(exif);
+                if (geoDegree.getLatitude() != null && geoDegree.getLongitude() != null) {
+                    exifData.putDouble("Latitude", geoDegree.getLatitude());
+                    exifData.putDouble("Longitude", geoDegree.getLongitude());
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
 
         for (String attribute : attributes) {
@@ -51,6 +60,18 @@ class ExifExtractor {
                 TAG_EXPOSURE_TIME,
                 TAG_FLASH,
                 TAG_FOCAL_LENGTH,
+                TAG_IMAGE_LENGTH,
+                TAG_IMAGE_WIDTH,
+                TAG_ISO,
+                TAG_MAKE,
+                TAG_MODEL,
+                TAG_ORIENTATION,
+                TAG_WHITE_BALANCE
+        ));
+    }
+
+    private static List<String> getLocationAttributes() {
+        return new ArrayList<>(Arrays.asList(
                 TAG_GPS_ALTITUDE,
                 TAG_GPS_ALTITUDE_REF,
                 TAG_GPS_DATESTAMP,
@@ -59,14 +80,7 @@ class ExifExtractor {
                 TAG_GPS_LONGITUDE,
                 TAG_GPS_LONGITUDE_REF,
                 TAG_GPS_PROCESSING_METHOD,
-                TAG_GPS_TIMESTAMP,
-                TAG_IMAGE_LENGTH,
-                TAG_IMAGE_WIDTH,
-                TAG_ISO,
-                TAG_MAKE,
-                TAG_MODEL,
-                TAG_ORIENTATION,
-                TAG_WHITE_BALANCE
+                TAG_GPS_TIMESTAMP
         ));
     }
 
@@ -0,0 +1,237 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.media.ExifInterface;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Reads and edits EXIF APP1 segments of JPEGs (marker included) directly, without going through
+ * ExifInterface, which can only rewrite whole files.
+ */
+class ExifSegment {
+    static final int TIFF_OFFSET = 10;
+
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_GPS_IFD = 0x8825;
+
+    // sizes of TIFF field types, indexed by type
+    private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8};
+
+    static boolean isExif(byte[] segment) {
+        return segment.length > TIFF_OFFSET + 8 && (segment[1] & 0xff) == JpegImage.APP1
+                && segment[4] == 'E' && segment[5] == 'x' && segment[6] == 'i' && segment[7] == 'f'
+                && segment[8] == 0 && segment[9] == 0;
+    }
+
+    /**
+     * Segment with nothing but the orientation tag.
+     */
+    static byte[] forOrientation(int orientation) {
+        byte[] segment = new byte[TIFF_OFFSET + 8 + 2 + 12 + 4];
+        int length = segment.length - 2;
+        segment[0] = (byte) 0xFF;
+        segment[1] = (byte) JpegImage.APP1;
+        segment[2] = (byte) (length >> 8);
+        segment[3] = (byte) length;
+        segment[4] = 'E';
+        segment[5] = 'x';
+        segment[6] = 'i';
+        segment[7] = 'f';
+
+        // big endian TIFF header, first IFD right after it
+        int tiff = TIFF_OFFSET;
+        segment[tiff] = 'M';
+        segment[tiff + 1] = 'M';
+        segment[tiff + 3] = 42;
+        segment[tiff + 7] = 8;
+
+        int ifd = tiff + 8;
+        segment[ifd + 1] = 1;
+        segment[ifd + 2] = (byte) (TAG_ORIENTATION >> 8);
+        segment[ifd + 3] = (byte) TAG_ORIENTATION;
+        segment[ifd + 5] = TYPE_SHORT;
+        segment[ifd + 9] = 1;
+        segment[ifd + 11] = (byte) orientation;
+        return segment;
+    }
+
+    /**
+     * Wraps the output of an encoder which writes a JPEG, the segment is inserted right after
+     * SOI as the encoded bytes pass through.
+     */
+    static OutputStream inject(OutputStream out, byte[] segment) {
+        return new InjectingOutputStream(out, segment);
+    }
+
+    /**
+     * @return orientation tag of the first IFD, ORIENTATION_UNDEFINED if there is none
+     */
+    static int getOrientation(byte[] segment) {
+        int entry = findEntry(segment, TAG_ORIENTATION);
+        if (entry < 0 || readShort(segment, entry + 2, isLittleEndian(segment)) != TYPE_SHORT) {
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+        return readShort(segment, entry + 8, isLittleEndian(segment));
+    }
+
+    /**
+     * Sets orientation in place, nothing else in the segment moves so offsets stay valid.
+     *
+     * @return false if the segment has no orientation tag
+     */
+    static boolean setOrientation(byte[] segment, int orientation) {
+        int entry = findEntry(segment, TAG_ORIENTATION);
+        if (entry < 0 || readShort(segment, entry + 2, isLittleEndian(segment)) != TYPE_SHORT) {
+            return false;
+        }
+
+        boolean littleEndian = isLittleEndian(segment);
+        segment[entry + 8] = (byte) (littleEndian ? orientation : 0);
+        segment[entry + 9] = (byte) (littleEndian ? 0 : orientation);
+        return true;
+    }
+
+    /**
+     * Removes the GPS IFD in place: its pointer is taken out of the first IFD and all of its
+     * entries and values are overwritten with zeros. Segment length stays the same, so nothing
+     * else has to move.
+     */
+    static void redactLocation(byte[] segment) {
+        boolean littleEndian = isLittleEndian(segment);
+        int entry = findEntry(segment, TAG_GPS_IFD);
+        if (entry < 0) {
+            return;
+        }
+
+        int type = readShort(segment, entry + 2, littleEndian);
+        int gpsIfd = TIFF_OFFSET + readInt(segment, entry + 8, littleEndian);
+
+        // drop the pointer, entries after it and the next IFD offset move up by one entry
+        int ifd = TIFF_OFFSET + readInt(segment, TIFF_OFFSET + 4, littleEndian);
+        int count = readShort(segment, ifd, littleEndian);
+        int end = Math.min(segment.length, ifd + 2 + count * 12 + 4);
+        if (end < entry + 12) {
+            return;
+        }
+        System.arraycopy(segment, entry + 12, segment, entry, end - entry - 12);
+        fill(segment, end - 12, end);
+        writeShort(segment, ifd, count - 1, littleEndian);
+
+        if (type != TYPE_LONG || gpsIfd <= TIFF_OFFSET || gpsIfd + 2 > segment.length) {
+            return;
+        }
+
+        int gpsCount = readShort(segment, gpsIfd, littleEndian);
+        for (int i = 0; i < gpsCount; i++) {
+            int gpsEntry = gpsIfd + 2 + i * 12;
+            if (gpsEntry + 12 > segment.length) {
+                break;
+            }
+
+            int gpsType = readShort(segment, gpsEntry + 2, littleEndian);
+            long size = (long) (gpsType < TYPE_SIZES.length ? TYPE_SIZES[gpsType] : 1)
+                    * (readInt(segment, gpsEntry + 4, littleEndian) & 0xffffffffL);
+            if (size > 4) {
+                // value stored outside of the entry
+                long value = TIFF_OFFSET + (readInt(segment, gpsEntry + 8, littleEndian) & 0xffffffffL);
+                if (value >= TIFF_OFFSET && value + size <= segment.length) {
+                    fill(segment, (int) value, (int) (value + size));
+                }
+            }
+        }
+        fill(segment, gpsIfd, Math.min(segment.length, gpsIfd + 2 + gpsCount * 12 + 4));
+    }
+
+    /**
+     * @return offset of the entry with the given tag in the first IFD, or -1
+     */
+    private static int findEntry(byte[] segment, int tag) {
+        if (!isExif(segment)) {
+            return -1;
+        }
+
+        boolean littleEndian = isLittleEndian(segment);
+        int ifd = TIFF_OFFSET + readInt(segment, TIFF_OFFSET + 4, littleEndian);
+        if (ifd < TIFF_OFFSET || ifd + 2 > segment.length) {
+            return -1;
+        }
+
+        int count = readShort(segment, ifd, littleEndian);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return -1;
+            }
+            if (readShort(segment, entry, littleEndian) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLittleEndian(byte[] segment) {
+        return segment[TIFF_OFFSET] == 'I';
+    }
+
+    private static void fill(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            data[i] = 0;
+        }
+    }
+
+    private static int readShort(byte[] data, int pos, boolean littleEndian) {
+        int b0 = data[pos] & 0xff;
+        int b1 = data[pos + 1] & 0xff;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static void writeShort(byte[] data, int pos, int value, boolean littleEndian) {
+        data[pos] = (byte) (littleEndian ? value : value >> 8);
+        data[pos + 1] = (byte) (littleEndian ? value >> 8 : value);
+    }
+
+    private static int readInt(byte[] data, int pos, boolean littleEndian) {
+        int high = readShort(data, littleEndian ? pos + 2 : pos, littleEndian);
+        int low = readShort(data, littleEndian ? pos : pos + 2, littleEndian);
+        return (high << 16) | low;
+    }
+
+    private static class InjectingOutputStream extends FilterOutputStream {
+        private final byte[] segment;
+        // bytes of SOI which still have to pass before the segment is written
+        private int remaining = 2;
+
+        InjectingOutputStream(OutputStream out, byte[] segment) {
+            super(out);
+            this.segment = segment;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (remaining > 0 && --remaining == 0) {
+                out.write(segment);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                out.write(b, off, len);
+                return;
+            }
+
+            int head = Math.min(remaining, len);
+            out.write(b, off, head);
+            remaining -= head;
+            if (remaining == 0) {
+                out.write(segment);
+            }
+            out.write(b, off + head, len - head);
+        }
+    }
+}
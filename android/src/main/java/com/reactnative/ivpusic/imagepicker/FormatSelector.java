@@ -0,0 +1,151 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.Bitmap;
+
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+
+import java.util.Arrays;
+
+/**
+ * Picks the output format and quality for "compressImageFormat": "auto" from a small, heavily
+ * subsampled decode. Screenshots and graphics (large areas of identical pixels) go to palette
+ * PNG, photos with transparency to WebP (JPEG can't keep it), other photos to JPEG. JPEG and WebP
+ * quality starts at the requested (or default) quality and is lowered for busy images, which hide
+ * artifacts, and raised for smooth ones, where blocking shows first.
+ */
+class FormatSelector {
+    static final String AUTO = "auto";
+    // smallest side of the decode which is analysed
+    static final int ANALYSIS_SIZE = 128;
+
+    static final String FORMAT_JPEG = "jpeg";
+    static final String FORMAT_WEBP = "webp";
+    static final String FORMAT_PNG8 = "png8";
+
+    private static final int DEFAULT_QUALITY = 85;
+    private static final int QUALITY_STEP = 5;
+    private static final int MIN_QUALITY = 50;
+
+    // share of neighbors with identical colors above which an image is treated as a graphic
+    private static final double GRAPHIC_FLATNESS = 0.5;
+    // lower bar for images with few colors, grayscale photos have few colors but no flat areas
+    private static final double FEW_COLORS_FLATNESS = 0.2;
+    // mean luma difference of neighbors (0..1) which separates smooth and busy images
+    private static final double SMOOTH_EDGES = 0.02;
+    private static final double BUSY_EDGES = 0.08;
+
+    static class Decision {
+        final String format;
+        final int quality;
+        // distinct colors of the analysed decode, up to PaletteQuantizer.MAX_COLORS + 1
+        final int colors;
+        final double flatness;
+        final double edgeDensity;
+        final boolean alpha;
+        final long analysisNanos;
+
+        Decision(String format, int quality, int colors, double flatness, double edgeDensity, boolean alpha, long analysisNanos) {
+            this.format = format;
+            this.quality = quality;
+            this.colors = colors;
+            this.flatness = flatness;
+            this.edgeDensity = edgeDensity;
+            this.alpha = alpha;
+            this.analysisNanos = analysisNanos;
+        }
+
+        WritableMap toMap() {
+            WritableMap map = new WritableNativeMap();
+            map.putString("format", format);
+            map.putInt("quality", quality);
+            map.putInt("colors", colors);
+            map.putDouble("flatness", flatness);
+            map.putDouble("edgeDensity", edgeDensity);
+            map.putBoolean("alpha", alpha);
+            map.putDouble("analysisMs", analysisNanos / 1e6);
+            return map;
+        }
+    }
+
+    /**
+     * @param quality requested quality (0 to 100), or null to use the default
+     * @param startNanos when the analysis (including the decode) started
+     */
+    static Decision decide(Bitmap thumbnail, Integer quality, long startNanos) {
+        int width = thumbnail.getWidth();
+        int height = thumbnail.getHeight();
+        int[] pixels = new int[width * height];
+        thumbnail.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        boolean alpha = false;
+        if (thumbnail.hasAlpha()) {
+            for (int pixel : pixels) {
+                if ((pixel >>> 24) != 255) {
+                    alpha = true;
+                    break;
+                }
+            }
+        }
+
+        long equal = 0;
+        long pairs = 0;
+        long edges = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[y * width + x];
+                if (x + 1 < width) {
+                    int right = pixels[y * width + x + 1];
+                    equal += pixel == right ? 1 : 0;
+                    edges += Math.abs(luma(pixel) - luma(right));
+                    pairs++;
+                }
+                if (y + 1 < height) {
+                    int below = pixels[(y + 1) * width + x];
+                    equal += pixel == below ? 1 : 0;
+                    edges += Math.abs(luma(pixel) - luma(below));
+                    pairs++;
+                }
+            }
+        }
+        double flatness = pairs > 0 ? (double) equal / pairs : 1;
+        double edgeDensity = pairs > 0 ? edges / (255.0 * pairs) : 0;
+        int colors = countColors(pixels, PaletteQuantizer.MAX_COLORS + 1);
+
+        int base = quality != null ? quality : DEFAULT_QUALITY;
+        String format;
+        int chosenQuality = base;
+        boolean fewColors = colors <= PaletteQuantizer.MAX_COLORS;
+        if (flatness >= GRAPHIC_FLATNESS || (fewColors && flatness >= FEW_COLORS_FLATNESS)) {
+            format = FORMAT_PNG8;
+        } else {
+            format = alpha ? FORMAT_WEBP : FORMAT_JPEG;
+            if (edgeDensity < SMOOTH_EDGES) {
+                chosenQuality = Math.min(100, base + QUALITY_STEP);
+            } else if (edgeDensity > BUSY_EDGES) {
+                chosenQuality = Math.max(Math.min(base, MIN_QUALITY), base - QUALITY_STEP);
+            }
+        }
+
+        return new Decision(format, chosenQuality, colors, flatness, edgeDensity, alpha, System.nanoTime() - startNanos);
+    }
+
+    private static int luma(int pixel) {
+        return (((pixel >> 16) & 0xff) * 77 + ((pixel >> 8) & 0xff) * 150 + (pixel & 0xff) * 29) >> 8;
+    }
+
+    /**
+     * @return number of distinct colors, counting stops at limit
+     */
+    private static int countColors(int[] pixels, int limit) {
+        int[] sorted = pixels.clone();
+        Arrays.sort(sorted);
+        int colors = sorted.length > 0 ? 1 : 0;
+        for (int i = 1; i < sorted.length && colors < limit; i++) {
+            if (sorted[i] != sorted[i - 1]) {
+                colors++;
+            }
+        }
+        return colors;
+    }
+}
@@ -0,0 +1,391 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming GIF decoder for {@link AnimatedImage}. LZW codes are decoded straight onto the
+ * canvas as they are read, so memory doesn't depend on the size of frames or their number. Only
+ * frames disposed by restoring the previous canvas need a copy of the area they cover.
+ */
+class GifReader extends AnimatedImage {
+    private static final int EXTENSION = 0x21;
+    private static final int IMAGE = 0x2c;
+    private static final int GRAPHIC_CONTROL = 0xf9;
+    private static final int APPLICATION = 0xff;
+
+    private static final int DISPOSE_BACKGROUND = 2;
+    private static final int DISPOSE_PREVIOUS = 3;
+
+    private static final int MAX_CODES = 4096;
+    // viewers show frames with (almost) no delay for 100ms, animations rely on it
+    private static final int DEFAULT_DELAY_MS = 100;
+
+    private final int[] globalColors;
+    private final int[] localColors = new int[256];
+    private final byte[] block = new byte[255];
+
+    // LZW dictionary, codes are prefix code + suffix byte
+    private final short[] prefix = new short[MAX_CODES];
+    private final byte[] suffix = new byte[MAX_CODES];
+    private final byte[] stack = new byte[MAX_CODES + 1];
+
+    // graphic control extension of the next frame
+    private int delay;
+    private int disposal;
+    private int transparentIndex = -1;
+
+    // area of the frame read last (clipped to the canvas) and how it is disposed
+    private int lastDisposal;
+    private int lastX;
+    private int lastY;
+    private int lastWidth;
+    private int lastHeight;
+    private int[] saved;
+
+    private int frameDuration;
+
+    private GifReader(InputStream in, int width, int height, int loopCount, int[] globalColors) {
+        super(in, width, height, loopCount);
+        this.globalColors = globalColors;
+    }
+
+    /**
+     * Skips through the blocks of the GIF up to its second frame.
+     *
+     * @return how often the animation plays (0 forever), or -1 if the GIF has a single frame
+     */
+    static int scan(InputStream in) throws IOException {
+        int[] screen = readScreen(in);
+        if (screen == null) {
+            return -1;
+        }
+        if ((screen[2] & 0x80) != 0) {
+            skipFully(in, 3L << ((screen[2] & 7) + 1));
+        }
+
+        int frames = 0;
+        int loopCount = 1;
+        byte[] block = new byte[255];
+
+        while (true) {
+            int code = in.read();
+            if (code == EXTENSION) {
+                int label = read(in);
+                int size = readBlock(in, block);
+                if (label == APPLICATION && size == 11 && "NETSCAPE2.0".equals(new String(block, 0, 11, StandardCharsets.US_ASCII))) {
+                    size = readBlock(in, block);
+                    if (size >= 3 && block[0] == 1) {
+                        // repetitions after the first play, 0 for forever
+                        int repetitions = (block[1] & 0xff) | (block[2] & 0xff) << 8;
+                        loopCount = repetitions == 0 ? 0 : repetitions + 1;
+                    }
+                }
+                if (size > 0) {
+                    skipBlocks(in);
+                }
+            } else if (code == IMAGE) {
+                if (++frames > 1) {
+                    return loopCount;
+                }
+                readFully(in, block, 0, 9);
+                if ((block[8] & 0x80) != 0) {
+                    skipFully(in, 3L << ((block[8] & 7) + 1));
+                }
+                read(in);
+                skipBlocks(in);
+            } else {
+                return -1;
+            }
+        }
+    }
+
+    static GifReader open(InputStream in, int loopCount) throws IOException {
+        int[] screen = readScreen(in);
+        if (screen == null) {
+            in.close();
+            throw new IOException("Not a GIF");
+        }
+
+        int[] globalColors = null;
+        if ((screen[2] & 0x80) != 0) {
+            globalColors = new int[256];
+            readColors(in, globalColors, 2 << (screen[2] & 7));
+        }
+        return new GifReader(in, screen[0], screen[1], loopCount, globalColors);
+    }
+
+    /**
+     * Reads the header and logical screen descriptor, the global color table follows.
+     *
+     * @return width, height and flags, or null if this isn't a GIF
+     */
+    private static int[] readScreen(InputStream in) throws IOException {
+        byte[] header = new byte[13];
+        readFully(in, header, 0, header.length);
+        if (header[0] != 'G' || header[1] != 'I' || header[2] != 'F') {
+            return null;
+        }
+        return new int[]{
+                (header[6] & 0xff) | (header[7] & 0xff) << 8,
+                (header[8] & 0xff) | (header[9] & 0xff) << 8,
+                header[10] & 0xff
+        };
+    }
+
+    @Override
+    boolean readFrame(int[] canvas) throws IOException {
+        disposeLast(canvas);
+        InputStream in = getInput();
+
+        while (true) {
+            int code = in.read();
+            if (code == EXTENSION) {
+                int label = read(in);
+                int size = readBlock(in, block);
+                if (label == GRAPHIC_CONTROL && size >= 4) {
+                    disposal = (block[0] >> 2) & 7;
+                    delay = ((block[1] & 0xff) | (block[2] & 0xff) << 8) * 10;
+                    transparentIndex = (block[0] & 1) != 0 ? block[3] & 0xff : -1;
+                }
+                if (size > 0) {
+                    skipBlocks(in);
+                }
+            } else if (code == IMAGE) {
+                readImage(in, canvas);
+                return true;
+            } else {
+                // trailer, or data after the last frame which can't be read
+                return false;
+            }
+        }
+    }
+
+    @Override
+    int getFrameDuration() {
+        return frameDuration;
+    }
+
+    @Override
+    long getWorkingBytes() {
+        // copy of the canvas for frames disposed to the previous one
+        return (long) width * height * 4;
+    }
+
+    private void disposeLast(int[] canvas) {
+        if (lastDisposal == DISPOSE_BACKGROUND) {
+            // viewers clear to transparent rather than to the background color
+            for (int y = lastY; y < lastY + lastHeight; y++) {
+                int offset = y * width + lastX;
+                for (int x = 0; x < lastWidth; x++) {
+                    canvas[offset + x] = 0;
+                }
+            }
+        } else if (lastDisposal == DISPOSE_PREVIOUS) {
+            for (int y = 0; y < lastHeight; y++) {
+                System.arraycopy(saved, y * lastWidth, canvas, (lastY + y) * width + lastX, lastWidth);
+            }
+        }
+        lastDisposal = 0;
+    }
+
+    private void readImage(InputStream in, int[] canvas) throws IOException {
+        readFully(in, block, 0, 9);
+        int frameX = (block[0] & 0xff) | (block[1] & 0xff) << 8;
+        int frameY = (block[2] & 0xff) | (block[3] & 0xff) << 8;
+        int frameWidth = (block[4] & 0xff) | (block[5] & 0xff) << 8;
+        int frameHeight = (block[6] & 0xff) | (block[7] & 0xff) << 8;
+        int flags = block[8] & 0xff;
+
+        int[] colors = globalColors;
+        if ((flags & 0x80) != 0) {
+            readColors(in, localColors, 2 << (flags & 7));
+            colors = localColors;
+        } else if (colors == null) {
+            // no color table at all, indices are drawn as black
+            colors = localColors;
+            Arrays.fill(colors, 0xff000000);
+        }
+
+        lastX = Math.min(frameX, width);
+        lastY = Math.min(frameY, height);
+        lastWidth = Math.min(frameWidth, width - lastX);
+        lastHeight = Math.min(frameHeight, height - lastY);
+        if (disposal == DISPOSE_PREVIOUS) {
+            int area = lastWidth * lastHeight;
+            if (saved == null || saved.length < area) {
+                saved = new int[area];
+            }
+            for (int y = 0; y < lastHeight; y++) {
+                System.arraycopy(canvas, (lastY + y) * width + lastX, saved, y * lastWidth, lastWidth);
+            }
+        }
+
+        decodePixels(in, canvas, frameX, frameY, frameWidth, frameHeight, colors, (flags & 0x40) != 0);
+
+        frameDuration = delay <= 10 ? DEFAULT_DELAY_MS : delay;
+        lastDisposal = disposal;
+        delay = 0;
+        disposal = 0;
+        transparentIndex = -1;
+    }
+
+    private void decodePixels(
+            InputStream in,
+            int[] canvas,
+            int frameX,
+            int frameY,
+            int frameWidth,
+            int frameHeight,
+            int[] colors,
+            boolean interlaced
+    ) throws IOException {
+        int dataSize = read(in);
+        if (dataSize < 1 || dataSize > 11) {
+            throw new IOException("Invalid GIF code size " + dataSize);
+        }
+
+        int clear = 1 << dataSize;
+        int end = clear + 1;
+        int available = clear + 2;
+        int codeSize = dataSize + 1;
+        int codeMask = (1 << codeSize) - 1;
+        int oldCode = -1;
+        int first = 0;
+        for (int code = 0; code < clear; code++) {
+            prefix[code] = 0;
+            suffix[code] = (byte) code;
+        }
+
+        int datum = 0;
+        int bits = 0;
+        int top = 0;
+        int blockSize = 0;
+        int blockPosition = 0;
+        boolean terminated = false;
+
+        // position in the frame, interlaced frames store rows in 4 passes
+        int column = 0;
+        int row = 0;
+        int pass = 1;
+        int rowStep = interlaced ? 8 : 1;
+        long remaining = (long) frameWidth * frameHeight;
+
+        decoding:
+        while (remaining > 0) {
+            if (top == 0) {
+                while (bits < codeSize) {
+                    if (blockPosition == blockSize) {
+                        blockSize = read(in);
+                        if (blockSize == 0) {
+                            terminated = true;
+                            break decoding;
+                        }
+                        readFully(in, block, 0, blockSize);
+                        blockPosition = 0;
+                    }
+                    datum |= (block[blockPosition++] & 0xff) << bits;
+                    bits += 8;
+                }
+
+                int code = datum & codeMask;
+                datum >>= codeSize;
+                bits -= codeSize;
+
+                if (code == clear) {
+                    codeSize = dataSize + 1;
+                    codeMask = (1 << codeSize) - 1;
+                    available = clear + 2;
+                    oldCode = -1;
+                    continue;
+                }
+                if (code == end || code > available) {
+                    break;
+                }
+                if (oldCode == -1) {
+                    if (code >= clear) {
+                        break;
+                    }
+                    stack[top++] = suffix[code];
+                    oldCode = code;
+                    first = code;
+                    continue;
+                }
+
+                int inCode = code;
+                if (code == available) {
+                    stack[top++] = (byte) first;
+                    code = oldCode;
+                }
+                while (code >= clear) {
+                    stack[top++] = suffix[code];
+                    code = prefix[code];
+                }
+                first = suffix[code] & 0xff;
+                stack[top++] = (byte) first;
+
+                if (available < MAX_CODES) {
+                    prefix[available] = (short) oldCode;
+                    suffix[available] = (byte) first;
+                    available++;
+                    if ((available & codeMask) == 0 && available < MAX_CODES) {
+                        codeSize++;
+                        codeMask += available;
+                    }
+                }
+                oldCode = inCode;
+            }
+
+            int index = stack[--top] & 0xff;
+            int x = frameX + column;
+            int y = frameY + row;
+            if (index != transparentIndex && x < width && y < height) {
+                canvas[y * width + x] = colors[index];
+            }
+            remaining--;
+
+            if (++column == frameWidth) {
+                column = 0;
+                row += rowStep;
+                while (interlaced && row >= frameHeight && pass < 4) {
+                    pass++;
+                    row = 8 >> (pass - 1);
+                    rowStep = 16 >> (pass - 1);
+                }
+            }
+        }
+
+        if (!terminated) {
+            skipBlocks(in);
+        }
+    }
+
+    private static void readColors(InputStream in, int[] colors, int count) throws IOException {
+        byte[] rgb = new byte[count * 3];
+        readFully(in, rgb, 0, rgb.length);
+        for (int i = 0; i < count; i++) {
+            colors[i] = 0xff000000 | (rgb[i * 3] & 0xff) << 16 | (rgb[i * 3 + 1] & 0xff) << 8 | (rgb[i * 3 + 2] & 0xff);
+        }
+        for (int i = count; i < colors.length; i++) {
+            colors[i] = 0xff000000;
+        }
+    }
+
+    /**
+     * @return size of the data sub-block read, 0 for the terminator
+     */
+    private static int readBlock(InputStream in, byte[] block) throws IOException {
+        int size = read(in);
+        readFully(in, block, 0, size);
+        return size;
+    }
+
+    private static void skipBlocks(InputStream in) throws IOException {
+        int size;
+        while ((size = read(in)) > 0) {
+            skipFully(in, size);
+        }
+    }
+}
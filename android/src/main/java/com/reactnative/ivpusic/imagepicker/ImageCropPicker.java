@@ -10,6 +10,8 @@ import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
@@ -17,6 +19,7 @@ import android.os.Environment;
 import android.provider.MediaStore;
 import android.util.Base64;
 import android.util.Log;
+import android.util.Pair;
 import android.webkit.MimeTypeMap;
 import androidx.activity.result.PickVisualMediaRequest;
 import androidx.activity.result.contract.ActivityResultContracts;
@@ -29,9 +32,13 @@ import com.facebook.react.bridge.ActivityEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.PromiseImpl;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
 import com.facebook.react.bridge.WritableNativeMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.facebook.react.modules.core.PermissionAwareActivity;
 import com.facebook.react.modules.core.PermissionListener;
 import com.yalantis.ucrop.UCrop;
@@ -41,20 +48,22 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 class ImageCropPicker implements ActivityEventListener {
     static final String NAME = "RNCImageCropPicker";
+    static final String PROCESSED_IMAGE_EVENT = "RNCImageCropPickerProcessedImage";
 
     private static final int IMAGE_PICKER_REQUEST = 61110;
     private static final int CAMERA_PICKER_REQUEST = 61111;
@@ -71,6 +80,9 @@ class ImageCropPicker implements ActivityEventListener {
     private static final String E_CANNOT_LAUNCH_CAMERA = "E_CANNOT_LAUNCH_CAMERA";
     private static final String E_ERROR_WHILE_CLEANING_FILES = "E_ERROR_WHILE_CLEANING_FILES";
     private static final String E_LOW_MEMORY_ERROR = "E_LOW_MEMORY_ERROR";
+    private static final String E_INVALID_OPTIONS = "E_INVALID_OPTIONS";
+    private static final String E_CANNOT_WRITE_TRACE_LOG = "E_CANNOT_WRITE_TRACE_LOG";
+    private static final String E_SINGLE_OUTPUT_MSG = "outputUri and outputFd can only be used for a single image";
 
     private static final String E_NO_LIBRARY_PERMISSION_KEY = "E_NO_LIBRARY_PERMISSION";
     private static final String E_NO_LIBRARY_PERMISSION_MSG = "User did not grant library permission.";
@@ -79,8 +91,8 @@ class ImageCropPicker implements ActivityEventListener {
 
     private String mediaType = "any";
     private boolean multiple = false;
-    private boolean includeBase64 = false;
-    private boolean includeExif = false;
+    private boolean collapseDuplicates = false;
+    private int duplicateThreshold = PerceptualHash.DEFAULT_DUPLICATE_THRESHOLD;
     private boolean cropping = false;
     private boolean cropperCircleOverlay = false;
     private boolean freeStyleCropEnabled = false;
@@ -107,16 +119,18 @@ class ImageCropPicker implements ActivityEventListener {
     private Uri mCameraCaptureURI;
     private String mCurrentMediaPath;
     private ResultCollector resultCollector = new ResultCollector();
+    private PerceptualHash.Batch duplicateBatch;
     private Compression compression = new Compression();
     private ReactApplicationContext reactContext;
 
     ImageCropPicker(ReactApplicationContext reactContext) {
         this.reactContext = reactContext;
         reactContext.addActivityEventListener(this);
+        MemoryPressure.register(reactContext);
     }
 
-    private String getTmpDir(Activity activity) {
-        String tmpDir = activity.getCacheDir() + "/react-native-image-crop-picker";
+    private String getTmpDir(Context context) {
+        String tmpDir = context.getCacheDir() + "/react-native-image-crop-picker";
         new File(tmpDir).mkdir();
 
         return tmpDir;
@@ -125,8 +139,8 @@ class ImageCropPicker implements ActivityEventListener {
     private void setConfiguration(final ReadableMap options) {
         mediaType = options.hasKey("mediaType") ? options.getString("mediaType") : "any";
         multiple = options.hasKey("multiple") && options.getBoolean("multiple");
-        includeBase64 = options.hasKey("includeBase64") && options.getBoolean("includeBase64");
-        includeExif = options.hasKey("includeExif") && options.getBoolean("includeExif");
+        collapseDuplicates = options.hasKey("collapseDuplicates") && options.getBoolean("collapseDuplicates");
+        duplicateThreshold = options.hasKey("duplicateThreshold") ? options.getInt("duplicateThreshold") : PerceptualHash.DEFAULT_DUPLICATE_THRESHOLD;
         width = options.hasKey("width") ? options.getInt("width") : 0;
         height = options.hasKey("height") ? options.getInt("height") : 0;
         maxFiles = options.hasKey("maxFiles") ? options.getInt("maxFiles") : maxFiles;
@@ -145,6 +159,7 @@ class ImageCropPicker implements ActivityEventListener {
         useFrontCamera = options.hasKey("useFrontCamera") && options.getBoolean("useFrontCamera");
         cropperStatusBarLight = options.hasKey("cropperStatusBarLight") ? options.getBoolean("cropperStatusBarLight") : true;
         cropperNavigationBarLight = options.hasKey("cropperNavigationBarLight") ? options.getBoolean("cropperNavigationBarLight") : false;
+        duplicateBatch = null;
         this.options = options;
     }
 
@@ -389,6 +404,11 @@ class ImageCropPicker implements ActivityEventListener {
         }
 
         setConfiguration(options);
+        if (multiple && OutputTarget.fromOptions(options) != null) {
+            promise.reject(E_INVALID_OPTIONS, E_SINGLE_OUTPUT_MSG);
+            return;
+        }
+
         resultCollector.setup(promise, multiple);
 
         permissionsCheck(activity, promise, Collections.singletonList(Manifest.permission.WRITE_EXTERNAL_STORAGE), new Callable<Void>() {
@@ -421,7 +441,413 @@ class ImageCropPicker implements ActivityEventListener {
         });
     }
 
-    private String getBase64StringFromFile(String absoluteFilePath) {
+    public void cropImage(final String path, final ReadableMap rect, final ReadableMap options, final Promise promise) {
+        ProcessingExecutor.get().execute(() -> {
+            try {
+                promise.resolve(getCroppedImage(path, rect, options));
+            } catch (OutOfMemoryError ex) {
+                promise.reject(E_LOW_MEMORY_ERROR, ex.getMessage());
+            } catch (Exception ex) {
+                promise.reject(E_NO_IMAGE_DATA_FOUND, ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Runs the same pipeline as picked images go through (compression, exif, base64...) for files
+     * which are already available locally, without any UI. Images are processed in parallel,
+     * result of every image is emitted as soon as it is ready and the promise resolves with all
+     * of them, in the order of paths. With collapseDuplicates all images are hashed before any is
+     * processed, so the first of near-duplicates in the order of paths is the one which is kept.
+     */
+    public void processImages(final ReadableArray paths, final ReadableMap options, final Promise promise) {
+        final int count = paths.size();
+        if (count == 0) {
+            promise.resolve(new WritableNativeArray());
+            return;
+        }
+
+        if (count > 1 && OutputTarget.fromOptions(options) != null) {
+            promise.reject(E_INVALID_OPTIONS, E_SINGLE_OUTPUT_MSG);
+            return;
+        }
+
+        boolean collapseDuplicates = options.hasKey("collapseDuplicates") && options.getBoolean("collapseDuplicates");
+        if (!collapseDuplicates) {
+            processImages(paths, options, null, promise);
+            return;
+        }
+
+        // every image is hashed before any is skipped, so the first shot of a burst (in the order
+        // of paths) is kept, whichever thread gets to it first
+        final int duplicateThreshold = options.hasKey("duplicateThreshold") ? options.getInt("duplicateThreshold") : PerceptualHash.DEFAULT_DUPLICATE_THRESHOLD;
+        final Long[] hashes = new Long[count];
+        final AtomicInteger remaining = new AtomicInteger(count);
+
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final String path = paths.getString(i);
+
+            ProcessingExecutor.get().execute(() -> {
+                try {
+                    hashes[index] = getPerceptualHash(path);
+                } catch (OutOfMemoryError ex) {
+                    // the error is reported when the image is processed
+                    Log.w("image-crop-picker", "Cannot hash image " + path, ex);
+                } catch (Exception ex) {
+                    Log.w("image-crop-picker", "Cannot hash image " + path, ex);
+                }
+
+                if (remaining.decrementAndGet() == 0) {
+                    PerceptualHash.Batch batch = new PerceptualHash.Batch(duplicateThreshold);
+                    boolean[] duplicates = new boolean[count];
+                    for (int j = 0; j < count; j++) {
+                        duplicates[j] = hashes[j] != null && batch.isNearDuplicate(hashes[j]);
+                    }
+                    processImages(paths, options, duplicates, promise);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param duplicates images which are skipped as near-duplicates of earlier ones (may be null)
+     */
+    private void processImages(final ReadableArray paths, final ReadableMap options, final boolean[] duplicates, final Promise promise) {
+        final int count = paths.size();
+        final String batchId = options.hasKey("batchId") ? options.getString("batchId") : null;
+
+        final WritableMap[] results = new WritableMap[count];
+        final AtomicInteger remaining = new AtomicInteger(count);
+
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final String path = paths.getString(i);
+            // covers the time the image waits for a thread too
+            final int traceCookie = PipelineTrace.beginAsync("processImage");
+
+            ProcessingExecutor.get().execute(() -> {
+                WritableMap result = new WritableNativeMap();
+                result.putInt("index", index);
+                result.putString("sourcePath", path);
+
+                try {
+                    if (duplicates != null && duplicates[index]) {
+                        Log.d("image-crop-picker", "Skipping near-duplicate image " + path);
+                        result.putBoolean("skipped", true);
+                    } else {
+                        result.putMap("image", processImage(path, options));
+                    }
+                } catch (OutOfMemoryError ex) {
+                    result.putMap("error", getProcessingError(E_LOW_MEMORY_ERROR, ex));
+                } catch (Exception ex) {
+                    result.putMap("error", getProcessingError(E_NO_IMAGE_DATA_FOUND, ex));
+                }
+
+                // native maps can be consumed only once, so the event gets its own copy
+                PipelineTrace.begin("marshalResult");
+                WritableMap event = new WritableNativeMap();
+                event.merge(result);
+                if (batchId != null) {
+                    event.putString("batchId", batchId);
+                }
+                event.putInt("total", count);
+                emitProcessedImage(event);
+                PipelineTrace.end();
+
+                results[index] = result;
+                PipelineTrace.endAsync("processImage", traceCookie);
+                if (remaining.decrementAndGet() == 0) {
+                    PipelineTrace.begin("marshalResults");
+                    WritableArray all = new WritableNativeArray();
+                    for (WritableMap item : results) {
+                        all.pushMap(item);
+                    }
+                    promise.resolve(all);
+                    PipelineTrace.end();
+                }
+            });
+        }
+    }
+
+    /**
+     * Current memory pressure and the limits it puts on processing.
+     */
+    public void getMetrics(final Promise promise) {
+        MemoryPressure memoryPressure = MemoryPressure.register(this.reactContext);
+        DecodeBudget decodeBudget = DecodeBudget.get(this.reactContext);
+
+        WritableMap metrics = new WritableNativeMap();
+        metrics.putString("memoryPressure", memoryPressure.getLevel().name);
+        metrics.putInt("memoryPressureEvents", memoryPressure.getEvents());
+        metrics.putDouble("decodeBudgetBytes", decodeBudget.getCapacity());
+        metrics.putDouble("decodeBudgetReservedBytes", decodeBudget.getReserved());
+        metrics.putInt("concurrency", ProcessingExecutor.getConcurrency());
+        promise.resolve(metrics);
+    }
+
+    /**
+     * Does the one-time work of the first pick ahead of time, for apps which call it while idle:
+     * loads the classes picking, cropping and processing use, creates the processing pool, the
+     * decode budget and the temporary directories, loads the native JPEG encoder (if packaged)
+     * and runs the image codecs once. Failures only leave the first pick slower, so they are
+     * logged and the promise resolves anyway.
+     */
+    public void warmUp(final Promise promise) {
+        ProcessingExecutor.get().execute(() -> {
+            try {
+                Class<?>[] classes = {
+                        PickVisualMediaRequest.class,
+                        ActivityResultContracts.PickVisualMedia.class,
+                        UCrop.class,
+                        UCropActivity.class,
+                        ExifInterface.class,
+                        FileProvider.class,
+                        Compression.class,
+                        ResultCollector.class,
+                        ExifExtractor.class,
+                        Resampler.class,
+                        Stripes.class,
+                        OutputTarget.class
+                };
+                for (Class<?> type : classes) {
+                    Class.forName(type.getName(), true, type.getClassLoader());
+                }
+
+                DecodeBudget.get(this.reactContext);
+                NativeJpegEncoder.isAvailable();
+
+                getTmpDir(this.reactContext);
+                File pictures = this.reactContext.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+                if (pictures != null) {
+                    pictures.mkdirs();
+                }
+
+                // the first encode and decode of a process set up the codecs
+                Bitmap bitmap = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, encoded);
+                bitmap.recycle();
+                Bitmap decoded = BitmapFactory.decodeByteArray(encoded.toByteArray(), 0, encoded.size());
+                if (decoded != null) {
+                    decoded.recycle();
+                }
+            } catch (Exception | LinkageError e) {
+                Log.w("image-crop-picker", "Cannot warm up", e);
+            }
+
+            promise.resolve(null);
+        });
+    }
+
+    /**
+     * Starts writing trace events of the pipeline to a Chrome trace JSON file (see
+     * {@link PipelineTrace}), resolves with its path.
+     */
+    public void startTraceLog(final Promise promise) {
+        try {
+            promise.resolve(PipelineTrace.startLog(this.reactContext).getPath());
+        } catch (IOException ex) {
+            promise.reject(E_CANNOT_WRITE_TRACE_LOG, ex);
+        }
+    }
+
+    /**
+     * Finishes the trace log, resolves with its path (null if no log was running).
+     */
+    public void stopTraceLog(final Promise promise) {
+        File file = PipelineTrace.stopLog();
+        promise.resolve(file != null ? file.getPath() : null);
+    }
+
+    private WritableMap processImage(String path, ReadableMap options) throws Exception {
+        return getImage(getLocalImageSource(path), null, false, options, null);
+    }
+
+    /**
+     * Hash of the same tiny decode getImage computes it from.
+     */
+    private long getPerceptualHash(String path) throws Exception {
+        ImageSource source = getLocalImageSource(path);
+        BitmapFactory.Options original = validateImage(source);
+        int thumbnailSize = Math.max(PerceptualHash.SAMPLE_SIZE, Placeholder.SAMPLE_SIZE);
+        Bitmap thumbnail = compression.decodeThumbnail(this.reactContext, source, original, thumbnailSize, thumbnailSize);
+        try {
+            return PerceptualHash.compute(thumbnail);
+        } finally {
+            thumbnail.recycle();
+        }
+    }
+
+    /**
+     * @param path plain file path, or a file/content Uri
+     */
+    private ImageSource getLocalImageSource(String path) throws Exception {
+        Uri uri = Uri.parse(path);
+        if (uri.getScheme() == null) {
+            return ImageSource.fromFile(this.reactContext, path);
+        }
+
+        return getImageSource(this.reactContext, uri, RealPathUtil.getRealPathFromURI(this.reactContext, uri));
+    }
+
+    private WritableMap getProcessingError(String code, Throwable ex) {
+        WritableMap error = new WritableNativeMap();
+        error.putString("code", code);
+        error.putString("message", ex.getMessage());
+        return error;
+    }
+
+    private void emitProcessedImage(WritableMap event) {
+        if (!this.reactContext.hasActiveReactInstance()) {
+            return;
+        }
+
+        this.reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(PROCESSED_IMAGE_EVENT, event);
+    }
+
+    /**
+     * Crops the image without showing any UI, decoding only pixels inside of the crop rectangle.
+     * Rectangle is in coordinates of the upright (EXIF orientation applied) image, same as cropRect
+     * returned by openCropper.
+     */
+    private WritableMap getCroppedImage(String path, ReadableMap rect, ReadableMap options) throws Exception {
+        ImageSource source = getLocalImageSource(path);
+        BitmapFactory.Options original = validateImage(source);
+        int orientation = source.readExif().getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        boolean transposed = Compression.isTransposed(orientation);
+        int displayWidth = transposed ? original.outHeight : original.outWidth;
+        int displayHeight = transposed ? original.outWidth : original.outHeight;
+
+        int x = (int) rect.getDouble("x");
+        int y = (int) rect.getDouble("y");
+        Rect cropRect = new Rect(
+                Math.max(0, x),
+                Math.max(0, y),
+                Math.min(displayWidth, x + (int) rect.getDouble("width")),
+                Math.min(displayHeight, y + (int) rect.getDouble("height"))
+        );
+        if (cropRect.width() <= 0 || cropRect.height() <= 0) {
+            throw new Exception("Crop rectangle is outside of the image");
+        }
+
+        // width and height are exact output dimensions, same as in openCropper
+        int targetWidth = options.hasKey("width") ? options.getInt("width") : 0;
+        int targetHeight = options.hasKey("height") ? options.getInt("height") : 0;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            int maxWidth = options.hasKey("compressImageMaxWidth") ? options.getInt("compressImageMaxWidth") : cropRect.width();
+            int maxHeight = options.hasKey("compressImageMaxHeight") ? options.getInt("compressImageMaxHeight") : cropRect.height();
+            Pair<Integer, Integer> targetDimensions = compression.calculateTargetDimensions(cropRect.width(), cropRect.height(), maxWidth, maxHeight);
+            targetWidth = targetDimensions.first;
+            targetHeight = targetDimensions.second;
+        }
+
+        int quality = options.hasKey("compressImageQuality") ? (int) (options.getDouble("compressImageQuality") * 100) : 100;
+        Rect region = Compression.toRawRect(cropRect, orientation, original.outWidth, original.outHeight);
+        boolean includeBase64 = options.hasKey("includeBase64") && options.getBoolean("includeBase64");
+        boolean includeHash = options.hasKey("includeHash") && options.getBoolean("includeHash");
+        OutputTarget target = getOutputTarget(options, includeBase64, includeHash);
+
+        // unscaled crops of JPEGs at full quality just move compressed blocks around when the
+        // rectangle is aligned to them
+        Compression.Output croppedImage = null;
+        if (Compression.isJpeg(original.outMimeType) && quality >= 100 && target.getPaletteQuantizer() == null
+                && targetWidth == cropRect.width() && targetHeight == cropRect.height()) {
+            croppedImage = compression.transformJpeg(this.reactContext, source, original, region, orientation, target);
+        }
+        if (croppedImage == null) {
+            croppedImage = compression.cropRegion(this.reactContext, source, region, orientation, targetWidth, targetHeight, quality,
+                    DecodeProfile.fromOptions(options, original.outMimeType), target);
+        }
+
+        WritableMap image = new WritableNativeMap();
+        putLocation(image, croppedImage);
+        image.putInt("width", targetWidth);
+        image.putInt("height", targetHeight);
+        image.putString("mime", croppedImage.mime);
+        image.putInt("size", (int) croppedImage.size);
+        image.putString("modificationDate", String.valueOf(source.lastModified()));
+        image.putString("filename", source.getName());
+
+        if (includeBase64) {
+            image.putString("data", getBase64String(croppedImage, null));
+        }
+
+        if (includeHash) {
+            image.putString("hash", croppedImage.target.getHash());
+        }
+
+        if (options.hasKey("includeExif") && options.getBoolean("includeExif")) {
+            PipelineTrace.begin("exif");
+            try {
+                image.putMap("exif", ExifExtractor.extract(source, includesLocation(target)));
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            } finally {
+                PipelineTrace.end();
+            }
+        }
+
+        WritableMap cropRectMap = new WritableNativeMap();
+        cropRectMap.putInt("x", cropRect.left);
+        cropRectMap.putInt("y", cropRect.top);
+        cropRectMap.putInt("width", cropRect.width());
+        cropRectMap.putInt("height", cropRect.height());
+        image.putMap("cropRect", cropRectMap);
+
+        return image;
+    }
+
+    /**
+     * @return output target, which keeps written bytes around if they are needed for base64 and
+     * can't be read back, and hashes them while they are written if hash is requested
+     */
+    private OutputTarget getOutputTarget(ReadableMap options, boolean includeBase64, boolean includeHash) {
+        OutputTarget target = OutputTarget.forResult(this.reactContext, options);
+        if (includeBase64 && !target.isFile()) {
+            target.captureBytes();
+        }
+        if (includeHash) {
+            target.computeHash();
+        }
+        if (options.hasKey("normalizeOrientation") && options.getBoolean("normalizeOrientation")) {
+            target.requireUpright();
+        }
+        target.setMetadataFilter(MetadataFilter.fromOptions(options));
+        target.setJpegEncoder(NativeJpegEncoder.fromOptions(options));
+        target.setPaletteQuantizer(PaletteQuantizer.fromOptions(options));
+        return target;
+    }
+
+    private static boolean includesLocation(OutputTarget target) {
+        return target.getMetadataFilter() == null || target.getMetadataFilter().keepsLocation();
+    }
+
+    private void putLocation(WritableMap image, Compression.Output output) {
+        String location = output.getLocation();
+        if (location != null) {
+            image.putString("path", location);
+        }
+    }
+
+    /**
+     * @param digest if not null, updated with the bytes which are read
+     */
+    private String getBase64String(Compression.Output output, MessageDigest digest) {
+        PipelineTrace.begin("base64");
+        try {
+            if (output.file != null) {
+                return getBase64StringFromFile(output.file.getPath(), digest);
+            }
+            return Base64.encodeToString(output.target.getCapturedBytes(), Base64.NO_WRAP);
+        } finally {
+            PipelineTrace.end();
+        }
+    }
+
+    private String getBase64StringFromFile(String absoluteFilePath, MessageDigest digest) {
         InputStream inputStream;
 
         try {
@@ -439,6 +865,9 @@ class ImageCropPicker implements ActivityEventListener {
         try {
             while ((bytesRead = inputStream.read(buffer)) != -1) {
                 output.write(buffer, 0, bytesRead);
+                if (digest != null) {
+                    digest.update(buffer, 0, bytesRead);
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -465,6 +894,10 @@ class ImageCropPicker implements ActivityEventListener {
     }
 
     private WritableMap getSelection(Activity activity, Uri uri, boolean isCamera) throws Exception {
+        return getSelection(activity, uri, isCamera, false);
+    }
+
+    private WritableMap getSelection(Activity activity, Uri uri, boolean isCamera, boolean isCompressed) throws Exception {
         String path = resolveRealPath(activity, uri, isCamera);
         if (path == null || path.isEmpty()) {
             throw new Exception("Cannot resolve asset path.");
@@ -476,43 +909,58 @@ class ImageCropPicker implements ActivityEventListener {
             return null;
         }
 
-        return getImage(activity, path);
+        return getImage(activity, getImageSource(activity, uri, path), null, isCompressed);
     }
 
     private void getAsyncSelection(final Activity activity, Uri uri, boolean isCamera) throws Exception {
-        String path = resolveRealPath(activity, uri, isCamera);
+        getAsyncSelection(activity, uri, isCamera, null);
+    }
+
+    private void getAsyncSelection(final Activity activity, Uri uri, boolean isCamera, MediaRecord record) throws Exception {
+        String path = resolveRealPath(activity, uri, isCamera, record);
         if (path == null || path.isEmpty()) {
             resultCollector.notifyProblem(E_NO_IMAGE_DATA_FOUND, "Cannot resolve asset path.");
             return;
         }
 
-        String mime = getMimeType(path);
+        String mime = record != null && record.mimeType != null ? record.mimeType : getMimeType(path);
         if (mime != null && mime.startsWith("video/")) {
             getVideo(activity, path, mime);
             return;
         }
 
-        resultCollector.notifySuccess(getImage(activity, path));
+        WritableMap image = getImage(activity, getImageSource(activity, uri, path), record);
+
+        // near-duplicate of an image which is already part of the selection
+        if (image == null) {
+            resultCollector.notifySkipped();
+            return;
+        }
+
+        resultCollector.notifySuccess(image);
     }
 
-    private Bitmap validateVideo(Uri uri) throws Exception {
+    /**
+     * Checks that a frame of the video can be decoded, at a small size.
+     */
+    private void validateVideo(Uri uri) throws Exception {
         MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        retriever.setDataSource(reactContext.getCurrentActivity(), uri);
-        Bitmap bmp = retriever.getFrameAtTime();
+        try {
+            retriever.setDataSource(reactContext.getCurrentActivity(), uri);
+            Bitmap bmp = VideoFrames.getFrame(reactContext, retriever, -1,
+                    MediaMetadataRetriever.OPTION_CLOSEST_SYNC, VideoFrames.VALIDATION_SIZE);
 
-        if (bmp == null) {
-            throw new Exception("Cannot retrieve video data");
+            if (bmp == null) {
+                throw new Exception("Cannot retrieve video data");
+            }
+            bmp.recycle();
+        } finally {
+            retriever.release();
         }
-
-        retriever.release();
-        return bmp;
     }
 
-    private static Long getVideoDuration(String path) {
+    private static long getVideoDuration(MediaMetadataRetriever retriever) {
         try {
-            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-            retriever.setDataSource(path);
-
             return Long.parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
         } catch (Exception e) {
             return -1L;
@@ -520,99 +968,135 @@ class ImageCropPicker implements ActivityEventListener {
     }
 
     private void getVideo(final Activity activity, final String path, final String mime) throws Exception {
-        validateVideo(Uri.parse(path));
+        PipelineTrace.begin("validateVideo");
+        try {
+            validateVideo(Uri.parse(path));
+        } finally {
+            PipelineTrace.end();
+        }
         final String compressedVideoPath = getTmpDir(activity) + "/" + UUID.randomUUID().toString() + ".mp4";
+        final VideoFrames videoFrames = VideoFrames.fromOptions(options);
+        final int traceCookie = PipelineTrace.beginAsync("getVideo");
 
         new Thread(() -> compression.compressVideo(activity, options, path, compressedVideoPath, new PromiseImpl(args -> {
             String videoPath = (String) args[0];
 
+            // metadata, size and frames all come from one retriever session
+            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
             try {
-                Bitmap bmp = validateVideo(Uri.fromFile(new File(videoPath)));
+                retriever.setDataSource(videoPath);
+                Bitmap bmp = VideoFrames.getFrame(reactContext, retriever, -1,
+                        MediaMetadataRetriever.OPTION_CLOSEST_SYNC, VideoFrames.VALIDATION_SIZE);
+                if (bmp == null) {
+                    throw new Exception("Cannot retrieve video data");
+                }
+
+                int[] size = VideoFrames.getSize(retriever, bmp);
+                bmp.recycle();
+                if (size == null) {
+                    // no size metadata, only a full frame tells
+                    Bitmap frame = retriever.getFrameAtTime();
+                    if (frame == null) {
+                        throw new Exception("Cannot retrieve video data");
+                    }
+                    size = new int[]{frame.getWidth(), frame.getHeight()};
+                    frame.recycle();
+                }
+
                 long modificationDate = new File(videoPath).lastModified();
-                long duration = getVideoDuration(videoPath);
+                long duration = getVideoDuration(retriever);
 
                 WritableMap video = new WritableNativeMap();
-                video.putInt("width", bmp.getWidth());
-                video.putInt("height", bmp.getHeight());
-                video.putString("mime", mime);
+                video.putInt("width", size[0]);
+                video.putInt("height", size[1]);
+                // trimmed videos are remuxed to MP4
+                video.putString("mime", videoPath.equals(path) ? mime : "video/mp4");
                 video.putInt("size", (int) new File(videoPath).length());
                 video.putInt("duration", (int) duration);
                 video.putString("path", "file://" + videoPath);
                 video.putString("modificationDate", String.valueOf(modificationDate));
 
+                if (videoFrames != null) {
+                    if (MemoryPressure.isElevated()) {
+                        WritableArray deferredStages = new WritableNativeArray();
+                        deferredStages.pushString("frames");
+                        video.putArray("deferredStages", deferredStages);
+                    } else {
+                        video.putArray("frames", videoFrames.extract(reactContext, retriever, duration));
+                    }
+                }
+
                 resultCollector.notifySuccess(video);
             } catch (Exception e) {
                 resultCollector.notifyProblem(E_NO_IMAGE_DATA_FOUND, e);
+            } finally {
+                try {
+                    retriever.release();
+                } catch (IOException e) {
+                    Log.w("image-crop-picker", "Cannot release retriever", e);
+                }
+                PipelineTrace.endAsync("getVideo", traceCookie);
             }
         }, args -> {
+            PipelineTrace.endAsync("getVideo", traceCookie);
             WritableNativeMap ex = (WritableNativeMap) args[0];
             resultCollector.notifyProblem(ex.getString("code"), ex.getString("message"));
         }))).start();
     }
 
     private String resolveRealPath(Activity activity, Uri uri, boolean isCamera) throws IOException {
-        String path;
-
-        if (isCamera) {
-            Uri mediaUri = Uri.parse(mCurrentMediaPath);
-            path = mediaUri.getPath();
-        } else {
-            path = RealPathUtil.getRealPathFromURI(activity, uri);
-        }
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            // For videos, get the real path but don't copy the file
-            String mimeType = activity.getContentResolver().getType(uri);
-            if (mimeType != null && mimeType.startsWith("video/")) {
-                return RealPathUtil.getRealPathFromURI(activity, uri);
-            }
+        return resolveRealPath(activity, uri, isCamera, null);
+    }
 
-            String externalCacheDirPath = Uri.fromFile(activity.getExternalCacheDir()).getPath();
-            String externalFilesDirPath = Uri.fromFile(activity.getExternalFilesDir(null)).getPath();
-            String cacheDirPath = Uri.fromFile(activity.getCacheDir()).getPath();
-            String FilesDirPath = Uri.fromFile(activity.getFilesDir()).getPath();
+    private String resolveRealPath(Activity activity, Uri uri, boolean isCamera, MediaRecord record) throws IOException {
+        String path;
 
-            if (!path.startsWith(externalCacheDirPath)
-                    && !path.startsWith(externalFilesDirPath)
-                    && !path.startsWith(cacheDirPath)
-                    && !path.startsWith(FilesDirPath)) {
-                File copiedFile = this.createExternalStoragePrivateFile(activity, uri);
-                path = RealPathUtil.getRealPathFromURI(activity, Uri.fromFile(copiedFile));
+        PipelineTrace.begin("resolveRealPath");
+        try {
+            if (isCamera) {
+                Uri mediaUri = Uri.parse(mCurrentMediaPath);
+                path = mediaUri.getPath();
+            } else if (record != null && record.path != null) {
+                path = record.path;
+            } else {
+                path = RealPathUtil.getRealPathFromURI(activity, uri);
             }
+        } finally {
+            PipelineTrace.end();
         }
 
         return path;
     }
 
-    private File createExternalStoragePrivateFile(Context context, Uri uri) throws FileNotFoundException {
-        InputStream inputStream = context.getContentResolver().openInputStream(uri);
-
-        String extension = this.getExtension(context, uri);
-        File file = new File(context.getExternalCacheDir(), "/temp/" + System.currentTimeMillis() + "." + extension);
-        File parentFile = file.getParentFile();
-        if (parentFile != null) {
-            parentFile.mkdirs();
+    /**
+     * Since Android Q images outside of app directories can't be read by their path, they are
+     * read through a file descriptor of the content Uri instead. A copy of the file is made only
+     * if the unmodified original ends up in the result.
+     */
+    private ImageSource getImageSource(Context context, Uri uri, String path) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                && ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+                && (path == null || !isAppPath(context, path))) {
+            return ImageSource.fromUri(context, uri, path);
         }
 
-        try {
-            // Very simple code to copy a picture from the application's
-            // resource into the external file.  Note that this code does
-            // no error checking, and assumes the picture is small (does not
-            // try to copy it in chunks).  Note that if external storage is
-            // not currently mounted this will silently fail.
-            OutputStream outputStream = new FileOutputStream(file);
-            byte[] data = new byte[inputStream.available()];
-            inputStream.read(data);
-            outputStream.write(data);
-            inputStream.close();
-            outputStream.close();
-        } catch (IOException e) {
-            // Unable to create file, likely because external storage is
-            // not currently mounted.
-            Log.w("image-crop-picker", "Error writing " + file, e);
+        if (path == null || path.isEmpty()) {
+            throw new IOException("Cannot resolve image path.");
         }
 
-        return file;
+        return ImageSource.fromFile(context, path);
+    }
+
+    private boolean isAppPath(Context context, String path) {
+        String externalCacheDirPath = Uri.fromFile(context.getExternalCacheDir()).getPath();
+        String externalFilesDirPath = Uri.fromFile(context.getExternalFilesDir(null)).getPath();
+        String cacheDirPath = Uri.fromFile(context.getCacheDir()).getPath();
+        String filesDirPath = Uri.fromFile(context.getFilesDir()).getPath();
+
+        return path.startsWith(externalCacheDirPath)
+                || path.startsWith(externalFilesDirPath)
+                || path.startsWith(cacheDirPath)
+                || path.startsWith(filesDirPath);
     }
 
     public String getExtension(Context context, Uri uri) {
@@ -633,13 +1117,16 @@ class ImageCropPicker implements ActivityEventListener {
         return extension;
     }
 
-    private BitmapFactory.Options validateImage(String path) throws Exception {
+    private BitmapFactory.Options validateImage(ImageSource source) throws Exception {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
-        options.inPreferredConfig = Bitmap.Config.RGB_565;
-        options.inDither = true;
 
-        BitmapFactory.decodeFile(path, options);
+        PipelineTrace.begin("validateImage");
+        try {
+            source.decode(options);
+        } finally {
+            PipelineTrace.end();
+        }
 
         if (options.outMimeType == null || options.outWidth == 0 || options.outHeight == 0) {
             throw new Exception("Invalid image selected");
@@ -648,51 +1135,195 @@ class ImageCropPicker implements ActivityEventListener {
         return options;
     }
 
-    private WritableMap getImage(final Activity activity, String path) throws Exception {
+    private WritableMap getImage(final Activity activity, ImageSource source, MediaRecord record) throws Exception {
+        return getImage(activity, source, record, false);
+    }
+
+    private WritableMap getImage(final Activity activity, ImageSource source, MediaRecord record, boolean isCompressed) throws Exception {
+        return getImage(source, record, isCompressed, this.options, duplicateBatch);
+    }
+
+    /**
+     * Doesn't depend on picker state, so it can run for several images at once.
+     *
+     * @param isCompressed   image already has final dimensions and quality (e.g. cropper output),
+     *                       so compression options are not applied again
+     * @param duplicateBatch near-duplicates of images already in the batch are skipped (null is returned)
+     */
+    private WritableMap getImage(ImageSource source, MediaRecord record, boolean isCompressed, ReadableMap options,
+                                 PerceptualHash.Batch duplicateBatch) throws Exception {
         WritableMap image = new WritableNativeMap();
+        boolean includeBase64 = options.hasKey("includeBase64") && options.getBoolean("includeBase64");
+        boolean includeExif = options.hasKey("includeExif") && options.getBoolean("includeExif");
+        boolean includePerceptualHash = options.hasKey("includePerceptualHash") && options.getBoolean("includePerceptualHash");
+        boolean includePlaceholder = options.hasKey("includePlaceholder") && options.getBoolean("includePlaceholder");
+        boolean includeHash = options.hasKey("includeHash") && options.getBoolean("includeHash");
+
+        // optional stages are left out while the system is short on memory
+        WritableArray deferredStages = new WritableNativeArray();
+        if (MemoryPressure.isElevated()) {
+            if (includePerceptualHash) {
+                includePerceptualHash = false;
+                deferredStages.pushString("perceptualHash");
+            }
+            if (includePlaceholder) {
+                includePlaceholder = false;
+                deferredStages.pushString("placeholder");
+            }
+        }
 
-        if (path.startsWith("http://") || path.startsWith("https://")) {
+        if (source.toString().startsWith("http://") || source.toString().startsWith("https://")) {
             throw new Exception("Cannot select remote files");
         }
-        BitmapFactory.Options original = validateImage(path);
-        ExifInterface originalExif = new ExifInterface(path);
-        int orientation = originalExif.getAttributeInt(ExifInterface.TAG_ORIENTATION, 1);
-        boolean invertDimensions = (
-                orientation == ExifInterface.ORIENTATION_ROTATE_90 ||
-                        orientation == ExifInterface.ORIENTATION_ROTATE_270 ||
-                        orientation == ExifInterface.ORIENTATION_TRANSPOSE ||
-                        orientation == ExifInterface.ORIENTATION_TRANSVERSE
-        );
 
+        // MediaStore already knows bounds and orientation of indexed images
+        BitmapFactory.Options original = record != null && record.hasImageBounds() ? record.toBitmapOptions() : validateImage(source);
+        // exif is read only when pixels are transformed, the MediaStore rotation is enough for
+        // swapping width and height
+        Integer orientation = null;
+        boolean invertDimensions;
+        if (record != null && record.hasOrientation()) {
+            invertDimensions = record.isOrientationInverted();
+        } else {
+            orientation = source.readExif().getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            invertDimensions = Compression.isTransposed(orientation);
+        }
+
+
+        // hash and placeholder share a single tiny decode
+        Long perceptualHash = null;
+        Placeholder placeholder = null;
+        if (includePerceptualHash || duplicateBatch != null || includePlaceholder) {
+            int thumbnailSize = Math.max(PerceptualHash.SAMPLE_SIZE, Placeholder.SAMPLE_SIZE);
+            Bitmap thumbnail = compression.decodeThumbnail(this.reactContext, source, original, thumbnailSize, thumbnailSize);
+
+            try {
+                if (includePerceptualHash || duplicateBatch != null) {
+                    perceptualHash = PerceptualHash.compute(thumbnail);
+
+                    // check before the expensive compression and base64 stages run
+                    if (duplicateBatch != null && duplicateBatch.isNearDuplicate(perceptualHash)) {
+                        Log.d("image-crop-picker", "Skipping near-duplicate image " + source);
+                        return null;
+                    }
+                }
+
+                if (includePlaceholder) {
+                    // the hash is shown in place of the image, so it needs the orientation applied
+                    if (orientation == null) {
+                        orientation = source.readExif().getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+                    }
+                    Matrix matrix = Compression.getOrientationMatrix(orientation);
+                    Bitmap upright = matrix != null
+                            ? Bitmap.createBitmap(thumbnail, 0, 0, thumbnail.getWidth(), thumbnail.getHeight(), matrix, true)
+                            : thumbnail;
+                    try {
+                        placeholder = Placeholder.compute(upright);
+                    } finally {
+                        if (upright != thumbnail) {
+                            upright.recycle();
+                        }
+                    }
+                }
+            } finally {
+                thumbnail.recycle();
+            }
+        }
 
         // if compression options are provided image will be compressed. If none options is provided,
         // then original image will be returned
-        File compressedImage = compression.compressImage(this.reactContext, options, path, original);
-        String compressedImagePath = compressedImage.getPath();
-        BitmapFactory.Options options = validateImage(compressedImagePath);
-        long modificationDate = new File(path).lastModified();
-
-        image.putString("path", "file://" + compressedImagePath);
-        image.putInt("width", invertDimensions ? options.outHeight : options.outWidth);
-        image.putInt("height", invertDimensions ? options.outWidth : options.outHeight);
-        image.putString("mime", options.outMimeType);
-        image.putInt("size", (int) new File(compressedImagePath).length());
+        OutputTarget target = getOutputTarget(options, includeBase64, includeHash);
+        List<Compression.Variant> variants = compression.getVariants(options);
+        Compression.Output output = isCompressed
+                ? compression.keepOriginal(this.reactContext, source, original, target)
+                : compression.compressImage(this.reactContext, options, source, original, target, variants);
+        boolean isOriginal = output.file != null && output.file.equals(source.getFile());
+        boolean invertOutput = invertDimensions && !output.upright;
+        long modificationDate = record != null && record.dateModified > 0 ? record.dateModified * 1000 : source.lastModified();
+        long size = isOriginal && record != null && record.size > 0 ? record.size : output.size;
+        String filename = record != null && record.displayName != null ? record.displayName : source.getName();
+
+        PipelineTrace.begin("marshalResult");
+        putLocation(image, output);
+        image.putInt("width", invertOutput ? output.height : output.width);
+        image.putInt("height", invertOutput ? output.width : output.height);
+        image.putString("mime", output.mime);
+        image.putInt("size", (int) size);
         image.putString("modificationDate", String.valueOf(modificationDate));
-        image.putString("filename", new File(path).getName());
+        image.putString("filename", filename);
+
+        if (includePerceptualHash) {
+            image.putString("perceptualHash", PerceptualHash.toHex(perceptualHash));
+        }
+
+        if (target.getFormatDecision() != null) {
+            image.putMap("formatDecision", target.getFormatDecision().toMap());
+        }
+
+        if (placeholder != null) {
+            image.putString("blurHash", placeholder.blurHash);
+            image.putString("dominantColor", placeholder.dominantColor);
+        }
+        PipelineTrace.end();
+
+        if (variants != null) {
+            // resized images already wrote their variants from the same decode
+            if (!variants.isEmpty() && variants.get(0).file == null) {
+                compression.resizeVariants(this.reactContext, source, original.outWidth, original.outHeight, variants,
+                        DecodeProfile.fromOptions(options, original.outMimeType), target.isUprightRequired());
+            }
+
+            WritableArray variantsResult = new WritableNativeArray();
+            for (Compression.Variant variant : variants) {
+                WritableMap variantResult = new WritableNativeMap();
+                if (variant.name != null) {
+                    variantResult.putString("name", variant.name);
+                }
+                variantResult.putString("path", "file://" + variant.file.getPath());
+                boolean invertVariant = invertDimensions && !variant.upright;
+                variantResult.putInt("width", invertVariant ? variant.height : variant.width);
+                variantResult.putInt("height", invertVariant ? variant.width : variant.height);
+                variantResult.putString("mime", "image/jpeg");
+                variantResult.putInt("size", (int) variant.file.length());
+                variantsResult.pushMap(variantResult);
+            }
+            image.putArray("variants", variantsResult);
+        }
+
+        // written bytes were hashed on the way, only untouched originals have to be read (once,
+        // together with base64 if that is requested too)
+        MessageDigest originalDigest = includeHash && includeBase64 && output.target == null ? ContentHash.newDigest() : null;
 
         if (includeBase64) {
-            image.putString("data", getBase64StringFromFile(compressedImagePath));
+            image.putString("data", getBase64String(output, originalDigest));
+        }
+
+        if (includeHash) {
+            if (output.target != null) {
+                image.putString("hash", output.target.getHash());
+            } else if (originalDigest != null) {
+                image.putString("hash", ContentHash.toHex(originalDigest.digest()));
+            } else {
+                image.putString("hash", ContentHash.of(output.file));
+            }
         }
 
         if (includeExif) {
+            PipelineTrace.begin("exif");
             try {
-                WritableMap exif = ExifExtractor.extract(path);
+                WritableMap exif = ExifExtractor.extract(source, includesLocation(target));
                 image.putMap("exif", exif);
             } catch (Exception ex) {
                 ex.printStackTrace();
+            } finally {
+                PipelineTrace.end();
             }
         }
 
+        if (deferredStages.size() > 0) {
+            image.putArray("deferredStages", deferredStages);
+        }
+
         return image;
     }
 
@@ -713,10 +1344,44 @@ class ImageCropPicker implements ActivityEventListener {
         options.setNavigationBarLight(cropperNavigationBarLight);
     }
 
+    private int getCropQuality() {
+        return this.options.hasKey("compressImageQuality") ? (int) (this.options.getDouble("compressImageQuality") * 100) : 100;
+    }
+
+    /**
+     * @return true if the cropped image is resized after uCrop wrote it
+     */
+    private boolean isCropResized() {
+        return (width > 0 && height > 0)
+                || this.options.hasKey("compressImageMaxWidth")
+                || this.options.hasKey("compressImageMaxHeight");
+    }
+
+    /**
+     * Final dimensions of the cropped image. When width and height are provided it is exactly
+     * width x height, unless compressImageMaxWidth/compressImageMaxHeight make it even smaller.
+     * Otherwise it is the crop, fitted into compressImageMaxWidth/compressImageMaxHeight.
+     */
+    private Pair<Integer, Integer> getCropTargetDimensions(int croppedWidth, int croppedHeight) {
+        if (width > 0 && height > 0) {
+            int maxWidth = this.options.hasKey("compressImageMaxWidth") ? this.options.getInt("compressImageMaxWidth") : width;
+            int maxHeight = this.options.hasKey("compressImageMaxHeight") ? this.options.getInt("compressImageMaxHeight") : height;
+
+            return compression.calculateTargetDimensions(width, height, maxWidth, maxHeight);
+        }
+
+        int maxWidth = this.options.hasKey("compressImageMaxWidth") ? this.options.getInt("compressImageMaxWidth") : croppedWidth;
+        int maxHeight = this.options.hasKey("compressImageMaxHeight") ? this.options.getInt("compressImageMaxHeight") : croppedHeight;
+        return compression.calculateTargetDimensions(croppedWidth, croppedHeight, maxWidth, maxHeight);
+    }
+
     private void startCropping(final Activity activity, final Uri uri) {
+        // uCrop writes the final quality right away unless the crop is resized afterwards, then it
+        // writes an intermediate at quality 100 and the resize is the only lossy encode. uCrop's
+        // own resizing (withMaxResultSize) isn't used, it reports cropRect in resized coordinates
         UCrop.Options options = new UCrop.Options();
         options.setCompressionFormat(Bitmap.CompressFormat.JPEG);
-        options.setCompressionQuality(100);
+        options.setCompressionQuality(isCropResized() ? 100 : getCropQuality());
         options.setCircleDimmedLayer(cropperCircleOverlay);
         options.setFreeStyleCropEnabled(freeStyleCropEnabled);
         options.setShowCropGrid(showCropGuidelines);
@@ -752,6 +1417,8 @@ class ImageCropPicker implements ActivityEventListener {
     }
 
     private void imagePickerResult(Activity activity, final int requestCode, final int resultCode, final Intent data) {
+        duplicateBatch = multiple && collapseDuplicates ? new PerceptualHash.Batch(duplicateThreshold) : null;
+
         if (resultCode == Activity.RESULT_CANCELED) {
             resultCollector.notifyProblem(E_PICKER_CANCELLED_KEY, E_PICKER_CANCELLED_MSG);
         } else if (resultCode == Activity.RESULT_OK) {
@@ -764,9 +1431,17 @@ class ImageCropPicker implements ActivityEventListener {
                         resultCollector.setWaitCount(1);
                         getAsyncSelection(activity, data.getData(), false);
                     } else {
-                        resultCollector.setWaitCount(clipData.getItemCount());
+                        List<Uri> uris = new ArrayList<>(clipData.getItemCount());
                         for (int i = 0; i < clipData.getItemCount(); i++) {
-                            getAsyncSelection(activity, clipData.getItemAt(i).getUri(), false);
+                            uris.add(clipData.getItemAt(i).getUri());
+                        }
+
+                        // resolve MediaStore columns for the whole selection at once
+                        Map<Uri, MediaRecord> records = RealPathUtil.resolveBatch(activity, uris);
+
+                        resultCollector.setWaitCount(uris.size());
+                        for (Uri uri : uris) {
+                            getAsyncSelection(activity, uri, false, records.get(uri));
                         }
                     }
                 } catch (Exception ex) {
@@ -841,17 +1516,32 @@ class ImageCropPicker implements ActivityEventListener {
 
             if (resultUri != null) {
                 try {
-                    if (width > 0 && height > 0) {
-                        File resized = null;
-                        try{
-                            resized = compression.resize(this.reactContext, resultUri.getPath(), width, height, width, height, 100);
-                        } catch (OutOfMemoryError ex) {
-                                 resultCollector.notifyProblem(E_LOW_MEMORY_ERROR, ex.getMessage());
+                    if (isCropResized()) {
+                        int croppedWidth = data.getIntExtra(UCrop.EXTRA_OUTPUT_IMAGE_WIDTH, -1);
+                        int croppedHeight = data.getIntExtra(UCrop.EXTRA_OUTPUT_IMAGE_HEIGHT, -1);
+                        if (croppedWidth <= 0 || croppedHeight <= 0) {
+                            BitmapFactory.Options cropped = validateImage(ImageSource.fromFile(this.reactContext, resultUri.getPath()));
+                            croppedWidth = cropped.outWidth;
+                            croppedHeight = cropped.outHeight;
+                        }
+                        Pair<Integer, Integer> targetDimensions = getCropTargetDimensions(croppedWidth, croppedHeight);
+                        int targetWidth = targetDimensions.first;
+                        int targetHeight = targetDimensions.second;
+
+                        // uCrop wrote a quality 100 intermediate, which is kept only if it is final already
+                        if (croppedWidth != targetWidth || croppedHeight != targetHeight || getCropQuality() < 100) {
+                            File resized;
+                            try {
+                                resized = compression.resize(this.reactContext, ImageSource.fromFile(this.reactContext, resultUri.getPath()), targetWidth, targetHeight, targetWidth, targetHeight, getCropQuality());
+                            } catch (OutOfMemoryError ex) {
+                                resultCollector.notifyProblem(E_LOW_MEMORY_ERROR, ex.getMessage());
+                                return;
+                            }
+                            resultUri = Uri.fromFile(resized);
                         }
-                        resultUri = Uri.fromFile(resized);
                     }
 
-                    WritableMap result = getSelection(activity, resultUri, false);
+                    WritableMap result = getSelection(activity, resultUri, false, true);
 
                     if (result != null) {
                         result.putMap("cropRect", ImageCropPicker.getCroppedRectMap(data));
@@ -875,12 +1565,17 @@ class ImageCropPicker implements ActivityEventListener {
     @Override
     public void onActivityResult(Activity activity, final int requestCode, final int resultCode, final Intent data) {
         Log.d("RESULT", "onActivityResult");
-        if (requestCode == IMAGE_PICKER_REQUEST) {
-            imagePickerResult(activity, requestCode, resultCode, data);
-        } else if (requestCode == CAMERA_PICKER_REQUEST) {
-            cameraPickerResult(activity, requestCode, resultCode, data);
-        } else if (requestCode == UCrop.REQUEST_CROP) {
-            croppingResult(activity, requestCode, resultCode, data);
+        PipelineTrace.begin("onActivityResult");
+        try {
+            if (requestCode == IMAGE_PICKER_REQUEST) {
+                imagePickerResult(activity, requestCode, resultCode, data);
+            } else if (requestCode == CAMERA_PICKER_REQUEST) {
+                cameraPickerResult(activity, requestCode, resultCode, data);
+            } else if (requestCode == UCrop.REQUEST_CROP) {
+                croppingResult(activity, requestCode, resultCode, data);
+            }
+        } finally {
+            PipelineTrace.end();
         }
     }
 
@@ -0,0 +1,185 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Image the pipeline reads from: a local file, or a content Uri read through a file descriptor
+ * (app has no direct file access to media of other apps since Android Q). Reading through the
+ * descriptor avoids copying the whole file into the cache before it is decoded.
+ */
+class ImageSource {
+    private final Context context;
+    private final File file;
+    private final Uri uri;
+    private final String name;
+
+    private ImageSource(Context context, File file, Uri uri, String name) {
+        this.context = context;
+        this.file = file;
+        this.uri = uri;
+        this.name = name;
+    }
+
+    static ImageSource fromFile(Context context, String path) {
+        File file = new File(path);
+        return new ImageSource(context, file, null, file.getName());
+    }
+
+    /**
+     * @param path real path of the Uri if it is known (only its name is used), otherwise null
+     */
+    static ImageSource fromUri(Context context, Uri uri, String path) {
+        String name = path != null ? new File(path).getName() : uri.getLastPathSegment();
+        return new ImageSource(context, null, uri, name);
+    }
+
+    boolean isFile() {
+        return file != null;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return file != null ? file.getPath() : uri.toString();
+    }
+
+    private ParcelFileDescriptor openFileDescriptor() throws FileNotFoundException {
+        ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException("Cannot open " + uri);
+        }
+        return descriptor;
+    }
+
+    InputStream openInputStream() throws IOException {
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        return new ParcelFileDescriptor.AutoCloseInputStream(openFileDescriptor());
+    }
+
+    /**
+     * @return decoded bitmap, or null if the image can't be decoded (same as BitmapFactory)
+     */
+    Bitmap decode(BitmapFactory.Options options) throws IOException {
+        PipelineTrace.begin(options.inJustDecodeBounds ? "decodeBounds" : "decode");
+        try {
+            if (file != null) {
+                return BitmapFactory.decodeFile(file.getPath(), options);
+            }
+
+            ParcelFileDescriptor descriptor = openFileDescriptor();
+            try {
+                return BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(), null, options);
+            } finally {
+                descriptor.close();
+            }
+        } finally {
+            PipelineTrace.end();
+        }
+    }
+
+    BitmapRegionDecoder newRegionDecoder() throws IOException {
+        if (file != null) {
+            return BitmapRegionDecoder.newInstance(file.getPath(), false);
+        }
+
+        // decoder keeps its own duplicate of the descriptor
+        ParcelFileDescriptor descriptor = openFileDescriptor();
+        try {
+            return BitmapRegionDecoder.newInstance(descriptor.getFileDescriptor(), false);
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    ExifInterface readExif() throws IOException {
+        if (file != null) {
+            return new ExifInterface(file.getPath());
+        }
+
+        ParcelFileDescriptor descriptor = openFileDescriptor();
+        try {
+            return new ExifInterface(descriptor.getFileDescriptor());
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    long length() throws IOException {
+        if (file != null) {
+            return file.length();
+        }
+
+        ParcelFileDescriptor descriptor = openFileDescriptor();
+        try {
+            return descriptor.getStatSize();
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    /**
+     * Whole encoded file, for parsers which work on the compressed data (e.g. lossless JPEG
+     * transforms).
+     */
+    byte[] readBytes() throws IOException {
+        long length = length();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length > 0 && length < Integer.MAX_VALUE ? (int) length : 64 * 1024);
+
+        InputStream is = openInputStream();
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        } finally {
+            is.close();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return modification time in milliseconds, 0 if it is not known
+     */
+    long lastModified() {
+        if (file != null) {
+            return file.lastModified();
+        }
+
+        try {
+            ParcelFileDescriptor descriptor = openFileDescriptor();
+            try {
+                return Os.fstat(descriptor.getFileDescriptor()).st_mtime * 1000;
+            } finally {
+                descriptor.close();
+            }
+        } catch (IOException | ErrnoException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,650 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Baseline (sequential, Huffman coded, 8 bit) JPEG, decoded only up to its quantized DCT
+ * coefficients. That is all lossless transforms need, pixels are never reconstructed.
+ */
+class JpegImage {
+    // natural (row major) index of the n-th coefficient in zigzag order
+    static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    static final int SOF0 = 0xC0;
+    static final int SOF1 = 0xC1;
+    static final int DHT = 0xC4;
+    static final int SOI = 0xD8;
+    static final int EOI = 0xD9;
+    static final int SOS = 0xDA;
+    static final int DQT = 0xDB;
+    static final int DRI = 0xDD;
+    static final int APP0 = 0xE0;
+    static final int APP1 = 0xE1;
+    static final int APP15 = 0xEF;
+    static final int COM = 0xFE;
+
+    private static final int RST0 = 0xD0;
+    private static final int RST7 = 0xD7;
+
+    int width;
+    int height;
+    int maxH = 1;
+    int maxV = 1;
+    Component[] components;
+
+    // quantization tables in natural order, indexed by table id
+    final int[][] quantTables = new int[4][];
+
+    // APPn and COM segments (including their marker), written out unchanged
+    final List<byte[]> segments = new ArrayList<>();
+
+    int getMcuWidth() {
+        return 8 * maxH;
+    }
+
+    int getMcuHeight() {
+        return 8 * maxV;
+    }
+
+    int getMcusWide() {
+        return ceilDiv(width, getMcuWidth());
+    }
+
+    int getMcusHigh() {
+        return ceilDiv(height, getMcuHeight());
+    }
+
+    /**
+     * Memory taken by coefficients of all components.
+     */
+    long getCoefficientBytes() {
+        long bytes = 0;
+        for (Component component : components) {
+            bytes += (long) component.blocksWide * component.blocksHigh * 64 * 2;
+        }
+        return bytes;
+    }
+
+    /**
+     * Upper bound of {@link #getCoefficientBytes()} for a baseline JPEG of the given size, before
+     * its frame is read: 4 components at full resolution, padded to the biggest MCU.
+     */
+    static long getMaxCoefficientBytes(int width, int height) {
+        return 4L * (ceilDiv(width, 8) + 3) * (ceilDiv(height, 8) + 3) * 64 * 2;
+    }
+
+    static class Component {
+        int id;
+        int h;
+        int v;
+        int quantTable;
+
+        // block grid, padded to whole MCUs
+        int blocksWide;
+        int blocksHigh;
+
+        // 64 coefficients per block in natural order, blocks in row major order
+        short[] coefficients;
+
+        // transform applied when blocks are read (see JpegTransform)
+        int sourceX = 0;
+        int sourceY = 0;
+        int spanX = 0;
+        int spanY = 0;
+        boolean transpose = false;
+        boolean mirrorX = false;
+        boolean mirrorY = false;
+        int sourceBlocksWide;
+        private int[] sourceIndex;
+        private int[] sign;
+
+        // scan decoding state
+        int dcTable;
+        int acTable;
+        int predictor;
+
+        /**
+         * Number of blocks which cover actual image pixels, which is what non-interleaved scans
+         * contain.
+         */
+        int getDataBlocksWide(JpegImage image) {
+            return ceilDiv(ceilDiv(image.width * h, image.maxH), 8);
+        }
+
+        int getDataBlocksHigh(JpegImage image) {
+            return ceilDiv(ceilDiv(image.height * v, image.maxV), 8);
+        }
+
+        void copyBlock(int bx, int by, short[] block) {
+            int a = transpose ? by : bx;
+            int b = transpose ? bx : by;
+            int x = sourceX + (mirrorX ? spanX - 1 - a : a);
+            int y = sourceY + (mirrorY ? spanY - 1 - b : b);
+            int offset = (y * sourceBlocksWide + x) * 64;
+
+            if (!transpose && !mirrorX && !mirrorY) {
+                System.arraycopy(coefficients, offset, block, 0, 64);
+                return;
+            }
+
+            if (sourceIndex == null) {
+                prepareMapping();
+            }
+            for (int i = 0; i < 64; i++) {
+                block[i] = (short) (coefficients[offset + sourceIndex[i]] * sign[i]);
+            }
+        }
+
+        private void prepareMapping() {
+            sourceIndex = new int[64];
+            sign = new int[64];
+            for (int v = 0; v < 8; v++) {
+                for (int u = 0; u < 8; u++) {
+                    // frequencies of the source coefficient
+                    int su = transpose ? v : u;
+                    int sv = transpose ? u : v;
+                    sourceIndex[v * 8 + u] = sv * 8 + su;
+
+                    // mirroring negates coefficients of odd frequencies along the mirrored axis
+                    boolean negate = (mirrorX && (su & 1) != 0) != (mirrorY && (sv & 1) != 0);
+                    sign[v * 8 + u] = negate ? -1 : 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads markers up to (and including) the frame header, without decoding any scan.
+     *
+     * @return null if the image isn't a baseline JPEG
+     */
+    static JpegImage readFrame(byte[] data) throws IOException {
+        return read(data, true);
+    }
+
+    /**
+     * @return null if the image isn't a baseline JPEG (progressive, arithmetic coded, 12 bit...)
+     */
+    static JpegImage read(byte[] data) throws IOException {
+        return read(data, false);
+    }
+
+    private static JpegImage read(byte[] data, boolean frameOnly) throws IOException {
+        if (data.length < 4 || (data[0] & 0xff) != 0xFF || (data[1] & 0xff) != SOI) {
+            return null;
+        }
+
+        JpegImage image = new JpegImage();
+        HuffmanTable[] dcTables = new HuffmanTable[4];
+        HuffmanTable[] acTables = new HuffmanTable[4];
+        int restartInterval = 0;
+        boolean scanned = false;
+        int pos = 2;
+
+        while (true) {
+            // skip anything which isn't a marker (e.g. garbage after entropy coded data)
+            while (pos < data.length && (data[pos] & 0xff) != 0xFF) {
+                pos++;
+            }
+            while (pos < data.length && (data[pos] & 0xff) == 0xFF) {
+                pos++;
+            }
+            if (pos >= data.length) {
+                if (scanned) {
+                    // missing EOI, everything has been decoded anyway
+                    return image.allocateMissing();
+                }
+                throw new IOException("Unexpected end of JPEG data");
+            }
+
+            int marker = data[pos++] & 0xff;
+            if (marker == EOI) {
+                return scanned ? image.allocateMissing() : null;
+            }
+            if (marker == SOI || (marker >= RST0 && marker <= RST7)) {
+                continue;
+            }
+
+            if (pos + 2 > data.length) {
+                throw new IOException("Unexpected end of JPEG data");
+            }
+            int length = readShort(data, pos);
+            int start = pos + 2;
+            int end = pos + length;
+            if (length < 2 || end > data.length) {
+                throw new IOException("Invalid JPEG segment length");
+            }
+
+            if ((marker >= APP0 && marker <= APP15) || marker == COM) {
+                image.segments.add(Arrays.copyOfRange(data, pos - 2, end));
+            } else if (marker == DQT) {
+                // redefining tables between scans isn't something transforms can preserve
+                if (scanned) {
+                    return null;
+                }
+                readQuantTables(data, start, end, image.quantTables);
+            } else if (marker == DHT) {
+                readHuffmanTables(data, start, end, dcTables, acTables);
+            } else if (marker == DRI) {
+                restartInterval = readShort(data, start);
+            } else if (marker == SOF0 || marker == SOF1) {
+                if (!readFrameHeader(data, start, image)) {
+                    return null;
+                }
+                if (frameOnly) {
+                    return image;
+                }
+            } else if (marker == SOS) {
+                if (image.components == null) {
+                    throw new IOException("JPEG scan before frame header");
+                }
+                pos = readScan(data, start, end, image, dcTables, acTables, restartInterval);
+                if (pos < 0) {
+                    return null;
+                }
+                scanned = true;
+                continue;
+            } else if ((marker & 0xF0) == 0xC0 && marker != 0xC8 && marker != 0xCC) {
+                // progressive, lossless, hierarchical or arithmetic coded frame
+                return null;
+            } else if (marker == 0xDC) {
+                // height defined by DNL after the first scan
+                return null;
+            }
+
+            pos = end;
+        }
+    }
+
+    /**
+     * Components no scan covered are left blank (all zero coefficients).
+     */
+    private JpegImage allocateMissing() {
+        for (Component component : components) {
+            if (component.coefficients == null) {
+                component.coefficients = new short[component.blocksWide * component.blocksHigh * 64];
+            }
+        }
+        return this;
+    }
+
+    private static int readShort(byte[] data, int pos) {
+        return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+    }
+
+    private static void readQuantTables(byte[] data, int pos, int end, int[][] quantTables) throws IOException {
+        while (pos < end) {
+            int precision = (data[pos] & 0xff) >> 4;
+            int id = data[pos] & 0x0f;
+            pos++;
+            if (id > 3 || pos + 64 * (precision + 1) > end) {
+                throw new IOException("Invalid JPEG quantization table");
+            }
+
+            int[] table = new int[64];
+            for (int i = 0; i < 64; i++) {
+                if (precision == 0) {
+                    table[ZIGZAG[i]] = data[pos++] & 0xff;
+                } else {
+                    table[ZIGZAG[i]] = readShort(data, pos);
+                    pos += 2;
+                }
+            }
+            quantTables[id] = table;
+        }
+    }
+
+    private static void readHuffmanTables(byte[] data, int pos, int end, HuffmanTable[] dcTables, HuffmanTable[] acTables) throws IOException {
+        while (pos < end) {
+            int tableClass = (data[pos] & 0xff) >> 4;
+            int id = data[pos] & 0x0f;
+            pos++;
+            if (id > 3 || tableClass > 1 || pos + 16 > end) {
+                throw new IOException("Invalid JPEG Huffman table");
+            }
+
+            int[] counts = new int[17];
+            int total = 0;
+            for (int length = 1; length <= 16; length++) {
+                counts[length] = data[pos++] & 0xff;
+                total += counts[length];
+            }
+            if (total > 256 || pos + total > end) {
+                throw new IOException("Invalid JPEG Huffman table");
+            }
+
+            int[] symbols = new int[total];
+            for (int i = 0; i < total; i++) {
+                symbols[i] = data[pos++] & 0xff;
+            }
+
+            HuffmanTable table = new HuffmanTable(counts, symbols);
+            if (tableClass == 0) {
+                dcTables[id] = table;
+            } else {
+                acTables[id] = table;
+            }
+        }
+    }
+
+    private static boolean readFrameHeader(byte[] data, int pos, JpegImage image) throws IOException {
+        int precision = data[pos] & 0xff;
+        image.height = readShort(data, pos + 1);
+        image.width = readShort(data, pos + 3);
+        int count = data[pos + 5] & 0xff;
+        pos += 6;
+
+        if (precision != 8 || image.height == 0 || image.width == 0 || count == 0 || count > 4) {
+            return false;
+        }
+
+        Component[] components = new Component[count];
+        for (int i = 0; i < count; i++) {
+            Component component = new Component();
+            component.id = data[pos] & 0xff;
+            component.h = (data[pos + 1] & 0xff) >> 4;
+            component.v = data[pos + 1] & 0x0f;
+            component.quantTable = data[pos + 2] & 0xff;
+            pos += 3;
+
+            if (component.h < 1 || component.h > 4 || component.v < 1 || component.v > 4 || component.quantTable > 3) {
+                throw new IOException("Invalid JPEG frame header");
+            }
+
+            image.maxH = Math.max(image.maxH, component.h);
+            image.maxV = Math.max(image.maxV, component.v);
+            components[i] = component;
+        }
+
+        image.components = components;
+        for (Component component : components) {
+            component.blocksWide = image.getMcusWide() * component.h;
+            component.blocksHigh = image.getMcusHigh() * component.v;
+            component.sourceBlocksWide = component.blocksWide;
+        }
+        return true;
+    }
+
+    /**
+     * @return position after the entropy coded data, or -1 if the scan isn't sequential
+     */
+    private static int readScan(byte[] data, int pos, int end, JpegImage image, HuffmanTable[] dcTables,
+                                HuffmanTable[] acTables, int restartInterval) throws IOException {
+        int count = data[pos] & 0xff;
+        pos++;
+        if (count < 1 || count > 4) {
+            throw new IOException("Invalid JPEG scan header");
+        }
+
+        Component[] scanComponents = new Component[count];
+        for (int i = 0; i < count; i++) {
+            int id = data[pos] & 0xff;
+            int tables = data[pos + 1] & 0xff;
+            pos += 2;
+
+            Component component = null;
+            for (Component candidate : image.components) {
+                if (candidate.id == id) {
+                    component = candidate;
+                }
+            }
+            if (component == null) {
+                throw new IOException("Invalid JPEG scan component");
+            }
+
+            component.dcTable = tables >> 4;
+            component.acTable = tables & 0x0f;
+            if (component.dcTable > 3 || component.acTable > 3
+                    || dcTables[component.dcTable] == null || acTables[component.acTable] == null) {
+                throw new IOException("Missing JPEG Huffman table");
+            }
+            component.predictor = 0;
+            if (component.coefficients == null) {
+                component.coefficients = new short[component.blocksWide * component.blocksHigh * 64];
+            }
+            scanComponents[i] = component;
+        }
+
+        int spectralStart = data[pos] & 0xff;
+        int spectralEnd = data[pos + 1] & 0xff;
+        int approximation = data[pos + 2] & 0xff;
+        if (spectralStart != 0 || spectralEnd != 63 || approximation != 0) {
+            return -1;
+        }
+
+        ScanReader reader = new ScanReader(data, end);
+        int units = 0;
+
+        if (count == 1) {
+            Component component = scanComponents[0];
+            int blocksWide = component.getDataBlocksWide(image);
+            int blocksHigh = component.getDataBlocksHigh(image);
+
+            for (int by = 0; by < blocksHigh; by++) {
+                for (int bx = 0; bx < blocksWide; bx++) {
+                    if (restartInterval > 0 && units > 0 && units % restartInterval == 0) {
+                        reader.restart(scanComponents);
+                    }
+                    reader.decodeBlock(component, (by * component.blocksWide + bx) * 64,
+                            dcTables[component.dcTable], acTables[component.acTable]);
+                    units++;
+                }
+            }
+        } else {
+            int mcusWide = image.getMcusWide();
+            int mcusHigh = image.getMcusHigh();
+
+            for (int mcuY = 0; mcuY < mcusHigh; mcuY++) {
+                for (int mcuX = 0; mcuX < mcusWide; mcuX++) {
+                    if (restartInterval > 0 && units > 0 && units % restartInterval == 0) {
+                        reader.restart(scanComponents);
+                    }
+
+                    for (Component component : scanComponents) {
+                        HuffmanTable dcTable = dcTables[component.dcTable];
+                        HuffmanTable acTable = acTables[component.acTable];
+
+                        for (int v = 0; v < component.v; v++) {
+                            int row = (mcuY * component.v + v) * component.blocksWide + mcuX * component.h;
+                            for (int h = 0; h < component.h; h++) {
+                                reader.decodeBlock(component, (row + h) * 64, dcTable, acTable);
+                            }
+                        }
+                    }
+                    units++;
+                }
+            }
+        }
+
+        return reader.getPosition();
+    }
+
+    static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * Huffman table prepared for decoding, codes up to LOOKAHEAD bits long are decoded with a
+     * single table lookup.
+     */
+    static class HuffmanTable {
+        static final int LOOKAHEAD = 9;
+
+        // (code length << 8) | symbol, 0 for codes longer than LOOKAHEAD
+        final int[] lookup = new int[1 << LOOKAHEAD];
+        final int[] maxCode = new int[18];
+        final int[] valueOffset = new int[17];
+        final int[] symbols;
+
+        HuffmanTable(int[] counts, int[] symbols) {
+            this.symbols = symbols;
+
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                valueOffset[length] = k - code;
+                for (int i = 0; i < counts[length]; i++) {
+                    if (length <= LOOKAHEAD) {
+                        int shift = LOOKAHEAD - length;
+                        int first = code << shift;
+                        for (int j = 0; j < (1 << shift); j++) {
+                            lookup[first + j] = (length << 8) | symbols[k];
+                        }
+                    }
+                    code++;
+                    k++;
+                }
+                maxCode[length] = counts[length] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+            maxCode[17] = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Bit reader over entropy coded data, removes stuffed zero bytes and stops at markers.
+     */
+    private static class ScanReader {
+        private final byte[] data;
+        private int pos;
+        private long bits = 0;
+        private int count = 0;
+        private boolean markerReached = false;
+
+        ScanReader(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        int getPosition() {
+            return pos;
+        }
+
+        private void fill() {
+            while (count <= 56) {
+                int b = 0;
+                if (!markerReached && pos < data.length) {
+                    b = data[pos] & 0xff;
+                    if (b == 0xFF) {
+                        int next = pos + 1 < data.length ? data[pos + 1] & 0xff : EOI;
+                        if (next == 0) {
+                            pos += 2;
+                        } else {
+                            // data ended, decoder is fed zeros from here on (same as libjpeg)
+                            markerReached = true;
+                            b = 0;
+                        }
+                    } else {
+                        pos++;
+                    }
+                }
+                bits = (bits << 8) | b;
+                count += 8;
+            }
+        }
+
+        private int readBits(int length) {
+            if (count < length) {
+                fill();
+            }
+            count -= length;
+            return (int) (bits >>> count) & ((1 << length) - 1);
+        }
+
+        private int decode(HuffmanTable table) throws IOException {
+            if (count < 16) {
+                fill();
+            }
+
+            int entry = table.lookup[(int) (bits >>> (count - HuffmanTable.LOOKAHEAD)) & ((1 << HuffmanTable.LOOKAHEAD) - 1)];
+            if (entry != 0) {
+                count -= entry >> 8;
+                return entry & 0xff;
+            }
+
+            for (int length = HuffmanTable.LOOKAHEAD + 1; length <= 16; length++) {
+                int code = (int) (bits >>> (count - length)) & ((1 << length) - 1);
+                if (code <= table.maxCode[length]) {
+                    count -= length;
+                    return table.symbols[code + table.valueOffset[length]];
+                }
+            }
+
+            throw new IOException("Corrupt JPEG data: invalid Huffman code");
+        }
+
+        private static int extend(int value, int length) {
+            return value < (1 << (length - 1)) ? value - (1 << length) + 1 : value;
+        }
+
+        void decodeBlock(Component component, int offset, HuffmanTable dcTable, HuffmanTable acTable) throws IOException {
+            short[] coefficients = component.coefficients;
+
+            int length = decode(dcTable);
+            if (length > 0) {
+                component.predictor += extend(readBits(length), length);
+            }
+            coefficients[offset] = (short) component.predictor;
+
+            for (int k = 1; k < 64; k++) {
+                int symbol = decode(acTable);
+                int run = symbol >> 4;
+                length = symbol & 0x0f;
+
+                if (length == 0) {
+                    if (run != 15) {
+                        break;
+                    }
+                    k += 15;
+                    continue;
+                }
+
+                k += run;
+                if (k > 63) {
+                    throw new IOException("Corrupt JPEG data: coefficient out of range");
+                }
+                coefficients[offset + ZIGZAG[k]] = (short) extend(readBits(length), length);
+            }
+        }
+
+        /**
+         * Skips to the next restart marker and resets DC predictors.
+         */
+        void restart(Component[] components) {
+            bits = 0;
+            count = 0;
+            markerReached = false;
+
+            while (pos + 1 < data.length) {
+                if ((data[pos] & 0xff) == 0xFF) {
+                    int marker = data[pos + 1] & 0xff;
+                    if (marker >= RST0 && marker <= RST7) {
+                        pos += 2;
+                        break;
+                    }
+                    if (marker != 0 && marker != 0xFF) {
+                        // some other marker, restart marker is missing
+                        break;
+                    }
+                }
+                pos++;
+            }
+
+            for (Component component : components) {
+                component.predictor = 0;
+            }
+        }
+    }
+}
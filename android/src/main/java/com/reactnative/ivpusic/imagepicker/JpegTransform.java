@@ -0,0 +1,140 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.media.ExifInterface;
+
+/**
+ * Lossless rotations, flips and crops of baseline JPEGs (like jpegtran), done by moving and
+ * negating quantized DCT coefficients. Only "perfect" transforms are done: crops have to start on
+ * MCU boundaries and mirrored edges have to end on them, otherwise partial edge blocks would move
+ * into the image and the caller has to decode and re-encode instead.
+ */
+class JpegTransform {
+    private final boolean transpose;
+    private final boolean mirrorX;
+    private final boolean mirrorY;
+
+    private JpegTransform(boolean transpose, boolean mirrorX, boolean mirrorY) {
+        this.transpose = transpose;
+        this.mirrorX = mirrorX;
+        this.mirrorY = mirrorY;
+    }
+
+    /**
+     * Transform which makes an image with the given exif orientation upright. Output pixel
+     * (x, y) comes from raw pixel (a, b), where (a, b) is (x, y) swapped if transposed, then
+     * mirrored along the flagged axes.
+     */
+    static JpegTransform forOrientation(int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                return new JpegTransform(false, true, false);
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return new JpegTransform(false, true, true);
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return new JpegTransform(false, false, true);
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return new JpegTransform(true, false, false);
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return new JpegTransform(true, false, true);
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return new JpegTransform(true, true, true);
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return new JpegTransform(true, true, false);
+            default:
+                return new JpegTransform(false, false, false);
+        }
+    }
+
+    /**
+     * @param frame image read by {@link JpegImage#readFrame}, crop is in raw (not oriented) pixels
+     */
+    boolean isPerfect(JpegImage frame, int cropX, int cropY, int cropWidth, int cropHeight) {
+        int mcuWidth = frame.getMcuWidth();
+        int mcuHeight = frame.getMcuHeight();
+
+        if (cropX % mcuWidth != 0 || cropY % mcuHeight != 0) {
+            return false;
+        }
+        if (cropX + cropWidth > frame.width || cropY + cropHeight > frame.height) {
+            return false;
+        }
+        if (mirrorX && cropWidth % mcuWidth != 0) {
+            return false;
+        }
+        return !mirrorY || cropHeight % mcuHeight == 0;
+    }
+
+    /**
+     * @return transformed image sharing coefficients with the source, blocks are moved as they
+     * are written
+     */
+    JpegImage apply(JpegImage source, int cropX, int cropY, int cropWidth, int cropHeight) {
+        JpegImage image = new JpegImage();
+        image.width = transpose ? cropHeight : cropWidth;
+        image.height = transpose ? cropWidth : cropHeight;
+        image.maxH = transpose ? source.maxV : source.maxH;
+        image.maxV = transpose ? source.maxH : source.maxV;
+        image.segments.addAll(source.segments);
+
+        for (int i = 0; i < 4; i++) {
+            int[] table = source.quantTables[i];
+            image.quantTables[i] = transpose && table != null ? transposeTable(table) : table;
+        }
+
+        int mcusWide = JpegImage.ceilDiv(cropWidth, source.getMcuWidth());
+        int mcusHigh = JpegImage.ceilDiv(cropHeight, source.getMcuHeight());
+
+        image.components = new JpegImage.Component[source.components.length];
+        for (int i = 0; i < source.components.length; i++) {
+            JpegImage.Component from = source.components[i];
+            JpegImage.Component to = new JpegImage.Component();
+
+            to.id = from.id;
+            to.quantTable = from.quantTable;
+            to.h = transpose ? from.v : from.h;
+            to.v = transpose ? from.h : from.v;
+            to.blocksWide = image.getMcusWide() * to.h;
+            to.blocksHigh = image.getMcusHigh() * to.v;
+
+            to.coefficients = from.coefficients;
+            to.sourceBlocksWide = from.blocksWide;
+            to.sourceX = cropX / source.getMcuWidth() * from.h;
+            to.sourceY = cropY / source.getMcuHeight() * from.v;
+            to.spanX = mcusWide * from.h;
+            to.spanY = mcusHigh * from.v;
+            to.transpose = transpose;
+            to.mirrorX = mirrorX;
+            to.mirrorY = mirrorY;
+
+            image.components[i] = to;
+        }
+
+        return image;
+    }
+
+    private static int[] transposeTable(int[] table) {
+        int[] transposed = new int[64];
+        for (int v = 0; v < 8; v++) {
+            for (int u = 0; u < 8; u++) {
+                transposed[v * 8 + u] = table[u * 8 + v];
+            }
+        }
+        return transposed;
+    }
+
+    /**
+     * Sets exif orientation to normal, in place.
+     */
+    static void resetOrientation(JpegImage image) {
+        for (int i = 0; i < image.segments.size(); i++) {
+            byte[] segment = image.segments.get(i);
+            if (ExifSegment.isExif(segment)) {
+                // segments may be shared with the source image
+                byte[] patched = segment.clone();
+                if (ExifSegment.setOrientation(patched, ExifInterface.ORIENTATION_NORMAL)) {
+                    image.segments.set(i, patched);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the coefficients of a {@link JpegImage} as a baseline JPEG. Huffman tables are built for
+ * the image (two passes over the blocks, JPEG spec Annex K.2), so transformed files usually end up
+ * slightly smaller than the originals.
+ */
+class JpegWriter {
+    private static final int MAX_BLOCKS_IN_MCU = 10;
+
+    private final JpegImage image;
+    private final OutputStream out;
+    private final short[] block = new short[64];
+
+    // table 0 for the first (luma) component, table 1 for all others
+    private final int[][] dcFrequencies = new int[2][257];
+    private final int[][] acFrequencies = new int[2][257];
+    private final HuffmanCode[] dcCodes = new HuffmanCode[2];
+    private final HuffmanCode[] acCodes = new HuffmanCode[2];
+
+    private boolean counting;
+    private long bitBuffer = 0;
+    private int bitCount = 0;
+
+    // entropy coded bytes, handed to the stream in chunks
+    private final byte[] buffer = new byte[64 * 1024];
+    private int buffered = 0;
+
+    private JpegWriter(JpegImage image, OutputStream out) {
+        this.image = image;
+        this.out = out;
+    }
+
+    static void write(JpegImage image, OutputStream out) throws IOException {
+        new JpegWriter(image, out).write();
+    }
+
+    private void write() throws IOException {
+        JpegImage.Component[][] scans = getScans();
+
+        counting = true;
+        for (JpegImage.Component[] scan : scans) {
+            writeScan(scan);
+        }
+
+        int tables = image.components.length > 1 ? 2 : 1;
+        for (int i = 0; i < tables; i++) {
+            dcCodes[i] = new HuffmanCode(dcFrequencies[i]);
+            acCodes[i] = new HuffmanCode(acFrequencies[i]);
+        }
+
+        writeMarker(JpegImage.SOI);
+        for (byte[] segment : image.segments) {
+            out.write(segment);
+        }
+        boolean extended = writeQuantTables();
+        writeFrameHeader(extended ? JpegImage.SOF1 : JpegImage.SOF0);
+        writeHuffmanTables(tables);
+
+        counting = false;
+        for (JpegImage.Component[] scan : scans) {
+            writeScanHeader(scan);
+            writeScan(scan);
+            flushBits();
+        }
+        writeMarker(JpegImage.EOI);
+    }
+
+    /**
+     * One interleaved scan, unless there is a single component or MCUs would have too many
+     * blocks, in which case every component gets its own scan.
+     */
+    private JpegImage.Component[][] getScans() {
+        JpegImage.Component[] components = image.components;
+        int blocksInMcu = 0;
+        for (JpegImage.Component component : components) {
+            blocksInMcu += component.h * component.v;
+        }
+
+        if (components.length > 1 && blocksInMcu <= MAX_BLOCKS_IN_MCU) {
+            return new JpegImage.Component[][]{components};
+        }
+
+        JpegImage.Component[][] scans = new JpegImage.Component[components.length][];
+        for (int i = 0; i < components.length; i++) {
+            scans[i] = new JpegImage.Component[]{components[i]};
+        }
+        return scans;
+    }
+
+    private int getTable(JpegImage.Component component) {
+        return component == image.components[0] ? 0 : 1;
+    }
+
+    private void writeScan(JpegImage.Component[] scan) throws IOException {
+        for (JpegImage.Component component : scan) {
+            component.predictor = 0;
+        }
+
+        if (scan.length == 1) {
+            JpegImage.Component component = scan[0];
+            int blocksWide = component.getDataBlocksWide(image);
+            int blocksHigh = component.getDataBlocksHigh(image);
+
+            for (int by = 0; by < blocksHigh; by++) {
+                for (int bx = 0; bx < blocksWide; bx++) {
+                    writeBlock(component, bx, by);
+                }
+            }
+            return;
+        }
+
+        int mcusWide = image.getMcusWide();
+        int mcusHigh = image.getMcusHigh();
+        for (int mcuY = 0; mcuY < mcusHigh; mcuY++) {
+            for (int mcuX = 0; mcuX < mcusWide; mcuX++) {
+                for (JpegImage.Component component : scan) {
+                    for (int v = 0; v < component.v; v++) {
+                        for (int h = 0; h < component.h; h++) {
+                            writeBlock(component, mcuX * component.h + h, mcuY * component.v + v);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeBlock(JpegImage.Component component, int bx, int by) throws IOException {
+        component.copyBlock(bx, by, block);
+        int table = getTable(component);
+
+        int diff = block[0] - component.predictor;
+        component.predictor = block[0];
+        writeSymbol(dcFrequencies[table], dcCodes[table], diff, 0);
+
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int coefficient = block[JpegImage.ZIGZAG[k]];
+            if (coefficient == 0) {
+                run++;
+                continue;
+            }
+
+            while (run > 15) {
+                emit(acFrequencies[table], acCodes[table], 0xF0);
+                run -= 16;
+            }
+            writeSymbol(acFrequencies[table], acCodes[table], coefficient, run);
+            run = 0;
+        }
+
+        if (run > 0) {
+            emit(acFrequencies[table], acCodes[table], 0x00);
+        }
+    }
+
+    /**
+     * Writes the (run, size) symbol of a value, followed by its size low bits.
+     */
+    private void writeSymbol(int[] frequencies, HuffmanCode code, int value, int run) throws IOException {
+        int magnitude = value < 0 ? -value : value;
+        int size = 32 - Integer.numberOfLeadingZeros(magnitude);
+
+        emit(frequencies, code, (run << 4) | size);
+        if (size > 0 && !counting) {
+            writeBits((value < 0 ? value - 1 : value) & ((1 << size) - 1), size);
+        }
+    }
+
+    private void emit(int[] frequencies, HuffmanCode code, int symbol) throws IOException {
+        if (counting) {
+            frequencies[symbol]++;
+        } else {
+            writeBits(code.codes[symbol], code.lengths[symbol]);
+        }
+    }
+
+    private void writeBits(int bits, int length) throws IOException {
+        bitBuffer = (bitBuffer << length) | bits;
+        bitCount += length;
+
+        while (bitCount >= 8) {
+            if (buffered > buffer.length - 2) {
+                out.write(buffer, 0, buffered);
+                buffered = 0;
+            }
+
+            int b = (int) (bitBuffer >>> (bitCount - 8)) & 0xff;
+            buffer[buffered++] = (byte) b;
+            if (b == 0xFF) {
+                // stuffed zero, so data isn't mistaken for a marker
+                buffer[buffered++] = 0;
+            }
+            bitCount -= 8;
+        }
+    }
+
+    /**
+     * Pads the last byte with one bits.
+     */
+    private void flushBits() throws IOException {
+        if (bitCount > 0) {
+            int padding = 8 - bitCount;
+            writeBits((1 << padding) - 1, padding);
+        }
+        bitBuffer = 0;
+        bitCount = 0;
+
+        out.write(buffer, 0, buffered);
+        buffered = 0;
+    }
+
+    private void writeMarker(int marker) throws IOException {
+        out.write(0xFF);
+        out.write(marker);
+    }
+
+    private void writeSegmentHeader(int marker, int length) throws IOException {
+        writeMarker(marker);
+        writeShort(length + 2);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value >> 8);
+        out.write(value & 0xff);
+    }
+
+    /**
+     * @return whether some table needs 16 bit precision, which baseline frames don't allow
+     */
+    private boolean writeQuantTables() throws IOException {
+        boolean extended = false;
+        for (int id = 0; id < 4; id++) {
+            if (!isQuantTableUsed(id)) {
+                continue;
+            }
+
+            int[] table = image.quantTables[id];
+            int precision = 0;
+            for (int value : table) {
+                if (value > 255) {
+                    precision = 1;
+                }
+            }
+            extended |= precision == 1;
+
+            writeSegmentHeader(JpegImage.DQT, 1 + 64 * (precision + 1));
+            out.write((precision << 4) | id);
+            for (int i = 0; i < 64; i++) {
+                int value = table[JpegImage.ZIGZAG[i]];
+                if (precision == 1) {
+                    writeShort(value);
+                } else {
+                    out.write(value);
+                }
+            }
+        }
+        return extended;
+    }
+
+    private boolean isQuantTableUsed(int id) throws IOException {
+        boolean used = false;
+        for (JpegImage.Component component : image.components) {
+            used |= component.quantTable == id;
+        }
+        if (used && image.quantTables[id] == null) {
+            throw new IOException("Missing JPEG quantization table");
+        }
+        return used;
+    }
+
+    private void writeFrameHeader(int marker) throws IOException {
+        JpegImage.Component[] components = image.components;
+        writeSegmentHeader(marker, 6 + 3 * components.length);
+        out.write(8);
+        writeShort(image.height);
+        writeShort(image.width);
+        out.write(components.length);
+        for (JpegImage.Component component : components) {
+            out.write(component.id);
+            out.write((component.h << 4) | component.v);
+            out.write(component.quantTable);
+        }
+    }
+
+    private void writeHuffmanTables(int tables) throws IOException {
+        for (int i = 0; i < tables; i++) {
+            writeHuffmanTable(0, i, dcCodes[i]);
+            writeHuffmanTable(1, i, acCodes[i]);
+        }
+    }
+
+    private void writeHuffmanTable(int tableClass, int id, HuffmanCode code) throws IOException {
+        writeSegmentHeader(JpegImage.DHT, 17 + code.symbols.length);
+        out.write((tableClass << 4) | id);
+        for (int length = 1; length <= 16; length++) {
+            out.write(code.counts[length]);
+        }
+        for (int symbol : code.symbols) {
+            out.write(symbol);
+        }
+    }
+
+    private void writeScanHeader(JpegImage.Component[] scan) throws IOException {
+        writeSegmentHeader(JpegImage.SOS, 4 + 2 * scan.length);
+        out.write(scan.length);
+        for (JpegImage.Component component : scan) {
+            int table = getTable(component);
+            out.write(component.id);
+            out.write((table << 4) | table);
+        }
+        // full spectral range, no successive approximation
+        out.write(0);
+        out.write(63);
+        out.write(0);
+    }
+
+    /**
+     * Optimal Huffman code limited to 16 bit codes, built the way JPEG spec Annex K.2 (and
+     * libjpeg) does it.
+     */
+    private static class HuffmanCode {
+        private static final int MAX_CODE_LENGTH = 32;
+
+        final int[] counts = new int[MAX_CODE_LENGTH + 1];
+        final int[] symbols;
+        final int[] codes = new int[256];
+        final int[] lengths = new int[256];
+
+        HuffmanCode(int[] symbolFrequencies) {
+            int[] frequencies = symbolFrequencies.clone();
+            int[] codeSizes = new int[257];
+            int[] others = new int[257];
+            for (int i = 0; i < 257; i++) {
+                others[i] = -1;
+            }
+
+            // reserved symbol, so no real code consists of only one bits
+            frequencies[256] = 1;
+
+            while (true) {
+                int c1 = -1;
+                long smallest = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++) {
+                    if (frequencies[i] > 0 && frequencies[i] <= smallest) {
+                        smallest = frequencies[i];
+                        c1 = i;
+                    }
+                }
+
+                int c2 = -1;
+                smallest = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++) {
+                    if (frequencies[i] > 0 && frequencies[i] <= smallest && i != c1) {
+                        smallest = frequencies[i];
+                        c2 = i;
+                    }
+                }
+
+                if (c2 < 0) {
+                    break;
+                }
+
+                frequencies[c1] += frequencies[c2];
+                frequencies[c2] = 0;
+
+                codeSizes[c1]++;
+                while (others[c1] >= 0) {
+                    c1 = others[c1];
+                    codeSizes[c1]++;
+                }
+                others[c1] = c2;
+
+                codeSizes[c2]++;
+                while (others[c2] >= 0) {
+                    c2 = others[c2];
+                    codeSizes[c2]++;
+                }
+            }
+
+            int total = 0;
+            for (int i = 0; i <= 256; i++) {
+                if (codeSizes[i] > 0) {
+                    counts[codeSizes[i]]++;
+                    if (i < 256) {
+                        total++;
+                    }
+                }
+            }
+
+            // shorten codes longer than 16 bits
+            for (int i = MAX_CODE_LENGTH; i > 16; i--) {
+                while (counts[i] > 0) {
+                    int j = i - 2;
+                    while (counts[j] == 0) {
+                        j--;
+                    }
+                    counts[i] -= 2;
+                    counts[i - 1]++;
+                    counts[j + 1] += 2;
+                    counts[j]--;
+                }
+            }
+
+            // drop the reserved symbol, which has the longest code
+            int longest = 16;
+            while (counts[longest] == 0) {
+                longest--;
+            }
+            counts[longest]--;
+
+            symbols = new int[total];
+            int k = 0;
+            for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+                for (int symbol = 0; symbol < 256; symbol++) {
+                    if (codeSizes[symbol] == length) {
+                        symbols[k++] = symbol;
+                    }
+                }
+            }
+
+            int code = 0;
+            k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < counts[length]; i++) {
+                    codes[symbols[k]] = code;
+                    lengths[symbols[k]] = length;
+                    code++;
+                    k++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+}
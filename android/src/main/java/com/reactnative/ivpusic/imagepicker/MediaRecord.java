@@ -0,0 +1,51 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.BitmapFactory;
+
+/**
+ * MediaStore columns of a selected item, resolved up front so later stages don't have to
+ * derive them from the file again.
+ */
+class MediaRecord {
+    String path;
+    String displayName;
+    String mimeType;
+    long size = -1;
+    int width = 0;
+    int height = 0;
+    // degrees, -1 when provider didn't report it
+    int orientation = -1;
+    // seconds since epoch, -1 when provider didn't report it
+    long dateModified = -1;
+
+    boolean isVideo() {
+        return mimeType != null && mimeType.startsWith("video/");
+    }
+
+    boolean hasImageBounds() {
+        return width > 0 && height > 0 && mimeType != null && mimeType.startsWith("image/");
+    }
+
+    boolean hasOrientation() {
+        return orientation >= 0;
+    }
+
+    /**
+     * MediaStore only reports rotations, flips and transposes of the exif orientation are lost, so
+     * this is only good for swapping width and height, not for transforming pixels.
+     */
+    boolean isOrientationInverted() {
+        return orientation == 90 || orientation == 270;
+    }
+
+    /**
+     * Same information decodeBounds would return, without touching the file.
+     */
+    BitmapFactory.Options toBitmapOptions() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.outWidth = width;
+        options.outHeight = height;
+        options.outMimeType = mimeType;
+        return options;
+    }
+}
@@ -0,0 +1,133 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Follows the memory pressure the system reports to the app (ComponentCallbacks2). While the
+ * system is running low on memory the picker gives up cached buffers, runs less work at once
+ * with a smaller {@link DecodeBudget}, and leaves optional stages (placeholders, perceptual
+ * hashes, video frames) out of results.
+ *
+ * There is no callback when pressure ends, so once no callback came for a while the level is
+ * checked again with ActivityManager.getMyMemoryState and lowered if the system has recovered.
+ */
+class MemoryPressure implements ComponentCallbacks2 {
+    enum Level {
+        NONE("none", 1),
+        LOW("low", 2),
+        CRITICAL("critical", 4);
+
+        final String name;
+        // share of the decode budget and of the processing threads which stays available
+        final int divisor;
+
+        Level(String name, int divisor) {
+            this.name = name;
+            this.divisor = divisor;
+        }
+    }
+
+    private static final long RECHECK_MILLIS = 10000;
+
+    private static MemoryPressure instance;
+
+    private final Context context;
+    private Level level = Level.NONE;
+    private long changedAt;
+    private int events;
+
+    private MemoryPressure(Context context) {
+        this.context = context;
+    }
+
+    static synchronized MemoryPressure register(Context context) {
+        if (instance == null) {
+            instance = new MemoryPressure(context);
+            context.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * @return true if optional work should be left out
+     */
+    static boolean isElevated() {
+        MemoryPressure pressure;
+        synchronized (MemoryPressure.class) {
+            pressure = instance;
+        }
+        return pressure != null && pressure.getLevel() != Level.NONE;
+    }
+
+    static Level fromTrimLevel(int trimLevel) {
+        if (trimLevel >= TRIM_MEMORY_COMPLETE || trimLevel == TRIM_MEMORY_RUNNING_CRITICAL) {
+            return Level.CRITICAL;
+        }
+        if (trimLevel == TRIM_MEMORY_RUNNING_LOW) {
+            return Level.LOW;
+        }
+        // UI_HIDDEN and BACKGROUND are sent whenever the system picker covers the app, they
+        // don't say that memory is short
+        return Level.NONE;
+    }
+
+    @Override
+    public void onTrimMemory(int trimLevel) {
+        raise(fromTrimLevel(trimLevel));
+    }
+
+    @Override
+    public void onLowMemory() {
+        raise(Level.CRITICAL);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration configuration) {
+    }
+
+    synchronized Level getLevel() {
+        if (level != Level.NONE && SystemClock.elapsedRealtime() - changedAt > RECHECK_MILLIS) {
+            ActivityManager.RunningAppProcessInfo info = new ActivityManager.RunningAppProcessInfo();
+            ActivityManager.getMyMemoryState(info);
+            Level current = fromTrimLevel(info.lastTrimLevel);
+            if (current.compareTo(level) < 0) {
+                apply(current);
+            }
+            changedAt = SystemClock.elapsedRealtime();
+        }
+        return level;
+    }
+
+    synchronized int getEvents() {
+        return events;
+    }
+
+    /**
+     * Callbacks only raise the level, lower ones (like the UI being hidden) don't say that the
+     * pressure is gone.
+     */
+    private synchronized void raise(Level reported) {
+        changedAt = SystemClock.elapsedRealtime();
+        if (reported.compareTo(level) <= 0) {
+            return;
+        }
+
+        events++;
+        apply(reported);
+        Resampler.clearCache();
+    }
+
+    private void apply(Level next) {
+        Log.d("image-crop-picker", "Memory pressure " + level.name + " -> " + next.name);
+        level = next;
+
+        DecodeBudget.get(context).setDivisor(next.divisor);
+        ProcessingExecutor.setConcurrency(ProcessingExecutor.getCores() / next.divisor);
+        Stripes.setSequential(next != Level.NONE);
+    }
+}
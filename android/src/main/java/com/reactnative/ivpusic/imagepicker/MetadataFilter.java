@@ -0,0 +1,233 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.media.ExifInterface;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Rewrites metadata segments of JPEGs which are returned without being re-encoded, selected by
+ * the "stripMetadata" and "redactLocation" options. Only APPn / COM segments in front of the
+ * first scan are touched, image data is copied byte for byte. Anything after EOI is dropped.
+ *
+ * stripMetadata keeps only what affects how the image looks (JFIF, ICC profile, Adobe color
+ * transform, exif orientation). redactLocation removes the GPS IFD from exif and drops XMP, which
+ * can repeat the location.
+ */
+class MetadataFilter {
+    private static final int RST0 = 0xD0;
+    private static final int RST7 = 0xD7;
+    private static final int APP2 = 0xE2;
+    private static final int APP14 = 0xEE;
+
+    private final boolean strip;
+    private final boolean redactLocation;
+
+    private MetadataFilter(boolean strip, boolean redactLocation) {
+        this.strip = strip;
+        this.redactLocation = redactLocation;
+    }
+
+    /**
+     * @return null if metadata should be left as it is
+     */
+    static MetadataFilter fromOptions(ReadableMap options) {
+        boolean strip = options.hasKey("stripMetadata") && options.getBoolean("stripMetadata");
+        boolean redactLocation = options.hasKey("redactLocation") && options.getBoolean("redactLocation");
+        return strip || redactLocation ? new MetadataFilter(strip, redactLocation) : null;
+    }
+
+    /**
+     * @return false if location has to be left out of the exif returned to JS as well
+     */
+    boolean keepsLocation() {
+        return !strip && !redactLocation;
+    }
+
+    /**
+     * Copies a JPEG, rewriting its metadata segments on the way. Everything from the first scan
+     * on is copied as it is.
+     */
+    void copy(InputStream in, OutputStream out) throws IOException {
+        if (in.read() != 0xFF || in.read() != JpegImage.SOI) {
+            throw new IOException("Not a JPEG file");
+        }
+        out.write(0xFF);
+        out.write(JpegImage.SOI);
+
+        while (true) {
+            int marker = readMarker(in);
+            if (marker < 0) {
+                return;
+            }
+
+            if (marker == JpegImage.EOI || marker == 0x01 || (marker >= RST0 && marker <= RST7)) {
+                out.write(0xFF);
+                out.write(marker);
+                continue;
+            }
+
+            int length = (readByte(in) << 8) | readByte(in);
+            if (length < 2) {
+                throw new IOException("Invalid JPEG segment length");
+            }
+
+            byte[] segment = new byte[length + 2];
+            segment[0] = (byte) 0xFF;
+            segment[1] = (byte) marker;
+            segment[2] = (byte) (length >> 8);
+            segment[3] = (byte) length;
+            readFully(in, segment, 4, length - 2);
+
+            if (isMetadata(marker)) {
+                segment = filter(segment);
+                if (segment != null) {
+                    out.write(segment);
+                }
+                continue;
+            }
+
+            out.write(segment);
+            if (marker == JpegImage.SOS) {
+                copyToEnd(in, out);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copies scans up to and including EOI. Whatever follows (e.g. multi-picture secondary images,
+     * which have metadata of their own) is dropped.
+     */
+    private static void copyToEnd(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        boolean marker = false;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                int b = buffer[i] & 0xff;
+                if (marker && b == JpegImage.EOI) {
+                    out.write(buffer, 0, i + 1);
+                    return;
+                }
+                marker = b == 0xFF;
+            }
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Filters segments of an image which is written by {@link JpegWriter}.
+     */
+    void filter(List<byte[]> segments) {
+        ListIterator<byte[]> it = segments.listIterator();
+        while (it.hasNext()) {
+            byte[] filtered = filter(it.next());
+            if (filtered == null) {
+                it.remove();
+            } else {
+                it.set(filtered);
+            }
+        }
+    }
+
+    /**
+     * @param segment APPn or COM segment, marker included
+     * @return segment to write instead, or null if it should be dropped
+     */
+    private byte[] filter(byte[] segment) {
+        int marker = segment[1] & 0xff;
+
+        if (ExifSegment.isExif(segment)) {
+            if (strip) {
+                // orientation is the only exif tag which changes how the image looks
+                int orientation = ExifSegment.getOrientation(segment);
+                boolean oriented = orientation != ExifInterface.ORIENTATION_UNDEFINED
+                        && orientation != ExifInterface.ORIENTATION_NORMAL;
+                return oriented ? ExifSegment.forOrientation(orientation) : null;
+            }
+
+            byte[] redacted = segment.clone();
+            ExifSegment.redactLocation(redacted);
+            return redacted;
+        }
+
+        if (marker == JpegImage.APP1 && startsWith(segment, "http://ns.adobe.com/")) {
+            // XMP (and extended XMP) may repeat the location
+            return null;
+        }
+
+        if (marker == APP2 && startsWith(segment, "MPF\0")) {
+            // index of secondary images, which aren't copied
+            return null;
+        }
+
+        if (!strip) {
+            return segment;
+        }
+
+        boolean keep = (marker == JpegImage.APP0 && (startsWith(segment, "JFIF\0") || startsWith(segment, "JFXX\0")))
+                || (marker == APP2 && startsWith(segment, "ICC_PROFILE\0"))
+                || (marker == APP14 && startsWith(segment, "Adobe"));
+        return keep ? segment : null;
+    }
+
+    private static boolean isMetadata(int marker) {
+        return (marker >= JpegImage.APP0 && marker <= JpegImage.APP15) || marker == JpegImage.COM;
+    }
+
+    private static boolean startsWith(byte[] segment, String identifier) {
+        if (segment.length < 4 + identifier.length()) {
+            return false;
+        }
+        for (int i = 0; i < identifier.length(); i++) {
+            if (segment[4 + i] != (byte) identifier.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return next marker (fill bytes skipped), or -1 at the end of the stream
+     */
+    private static int readMarker(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            return -1;
+        }
+        if (b != 0xFF) {
+            throw new IOException("Invalid JPEG marker");
+        }
+
+        while (b == 0xFF) {
+            b = readByte(in);
+        }
+        return b;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of JPEG data");
+        }
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = in.read(buffer, offset, length);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of JPEG data");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+}
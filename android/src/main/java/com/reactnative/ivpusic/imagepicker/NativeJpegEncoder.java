@@ -0,0 +1,75 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * JPEG encoder backed by libjpeg-turbo (or mozjpeg, which adds trellis quantization), selected by
+ * the "jpegEncoder" option. Unlike Bitmap.compress it always optimizes Huffman tables and lets the
+ * caller pick progressive mode and chroma subsampling. The native library is only packaged when
+ * the app opts in at build time, otherwise Bitmap.compress is used.
+ */
+class NativeJpegEncoder {
+    private static final String LIBRARY = "imagecroppicker-jpeg";
+    private static final String NATIVE = "native";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static Boolean loaded;
+
+    private final boolean progressive;
+    private final boolean fullChroma;
+
+    private NativeJpegEncoder(boolean progressive, boolean fullChroma) {
+        this.progressive = progressive;
+        this.fullChroma = fullChroma;
+    }
+
+    /**
+     * @return null if images should be encoded with Bitmap.compress
+     */
+    static NativeJpegEncoder fromOptions(ReadableMap options) {
+        if (!options.hasKey("jpegEncoder") || !NATIVE.equals(options.getString("jpegEncoder")) || !isAvailable()) {
+            return null;
+        }
+
+        boolean progressive = !options.hasKey("jpegProgressive") || options.getBoolean("jpegProgressive");
+        boolean fullChroma = options.hasKey("jpegChromaSubsampling") && "444".equals(options.getString("jpegChromaSubsampling"));
+        return new NativeJpegEncoder(progressive, fullChroma);
+    }
+
+    static synchronized boolean isAvailable() {
+        if (loaded == null) {
+            try {
+                System.loadLibrary(LIBRARY);
+                loaded = true;
+            } catch (UnsatisfiedLinkError e) {
+                Log.w("image-crop-picker", "Native JPEG encoder isn't packaged, using Bitmap.compress");
+                loaded = false;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Encodes straight into the stream, in chunks of BUFFER_SIZE.
+     *
+     * @return false if the bitmap config isn't supported, nothing has been written then
+     */
+    boolean compress(Bitmap bitmap, int quality, OutputStream out) throws IOException {
+        return nativeCompress(bitmap, quality, progressive, fullChroma, out, new byte[BUFFER_SIZE]);
+    }
+
+    private static native boolean nativeCompress(
+            Bitmap bitmap,
+            int quality,
+            boolean progressive,
+            boolean fullChroma,
+            OutputStream out,
+            byte[] buffer
+    ) throws IOException;
+}
@@ -0,0 +1,345 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.UUID;
+
+/**
+ * Destination of an encoded image: a new file in the app pictures directory, or a Uri / file
+ * descriptor supplied by the caller through the "outputUri" / "outputFd" options. Encoders stream
+ * straight into the destination, so nothing is written to a temporary file first.
+ */
+class OutputTarget {
+    private final File file;
+    private final Uri uri;
+    private final int fd;
+    private final boolean callerSupplied;
+
+    // bytes are kept only when they can't be read back from the destination (e.g. base64 of a pipe)
+    private ByteArrayOutputStream captured;
+    private MessageDigest digest;
+    private String hash;
+    private long writtenBytes = 0;
+
+    // orientation has to be applied to the pixels ("normalizeOrientation" option)
+    private boolean uprightRequired = false;
+
+    // metadata rewrite for JPEGs which are copied instead of encoded, null to copy them as they are
+    private MetadataFilter metadataFilter;
+
+    // encodes JPEGs instead of Bitmap.compress, null if it isn't selected or packaged
+    private NativeJpegEncoder jpegEncoder;
+
+    // writes palette PNGs instead of JPEGs ("compressImageFormat": "png8"), null for JPEG
+    private PaletteQuantizer paletteQuantizer;
+
+    // writes lossy WebP instead of JPEG, for images with alpha picked by "compressImageFormat": "auto"
+    private boolean webp = false;
+
+    // format picked for "compressImageFormat": "auto", reported with the result
+    private FormatSelector.Decision formatDecision;
+
+    private OutputTarget(File file, Uri uri, int fd, boolean callerSupplied) {
+        this.file = file;
+        this.uri = uri;
+        this.fd = fd;
+        this.callerSupplied = callerSupplied;
+    }
+
+    /**
+     * @return caller supplied destination, or null if output should go to a new file
+     */
+    static OutputTarget fromOptions(ReadableMap options) {
+        if (options.hasKey("outputUri") && !options.isNull("outputUri")) {
+            Uri uri = Uri.parse(options.getString("outputUri"));
+            if ("file".equals(uri.getScheme())) {
+                return new OutputTarget(new File(uri.getPath()), null, -1, true);
+            }
+            return new OutputTarget(null, uri, -1, true);
+        }
+
+        if (options.hasKey("outputFd") && !options.isNull("outputFd")) {
+            return new OutputTarget(null, null, options.getInt("outputFd"), true);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return caller supplied destination, otherwise a new file. Unless a destination was
+     * supplied, unmodified originals are returned as they are instead of being written to it.
+     */
+    static OutputTarget forResult(Context context, ReadableMap options) {
+        OutputTarget target = fromOptions(options);
+        return target != null ? target : newImageFile(context);
+    }
+
+    static OutputTarget newImageFile(Context context) {
+        File imageDirectory = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+
+        if (!imageDirectory.exists()) {
+            Log.d("image-crop-picker", "Pictures Directory is not existing. Will create this directory.");
+            imageDirectory.mkdirs();
+        }
+
+        return new OutputTarget(new File(imageDirectory, UUID.randomUUID() + ".jpg"), null, -1, false);
+    }
+
+    /**
+     * Same target (what is captured and hashed), but writing into the given file.
+     */
+    OutputTarget withFile(File file) {
+        OutputTarget target = new OutputTarget(file, null, -1, callerSupplied);
+        if (captured != null) {
+            target.captureBytes();
+        }
+        if (digest != null) {
+            target.computeHash();
+        }
+        target.uprightRequired = uprightRequired;
+        target.metadataFilter = metadataFilter;
+        target.jpegEncoder = jpegEncoder;
+        target.paletteQuantizer = paletteQuantizer;
+        target.webp = webp;
+        target.formatDecision = formatDecision;
+        return target;
+    }
+
+    /**
+     * Same target, with the extension of its file changed if the library named it. Destinations
+     * supplied by the caller are kept as they are.
+     */
+    OutputTarget withExtension(String extension) {
+        if (callerSupplied || file == null) {
+            return this;
+        }
+
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String renamed = (dot >= 0 ? name.substring(0, dot) : name) + "." + extension;
+        return renamed.equals(name) ? this : withFile(new File(file.getParentFile(), renamed));
+    }
+
+    /**
+     * New file in the cache, for copies of originals which can't be read by their path.
+     */
+    static File newCacheFile(Context context, String mimeType) {
+        String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(mimeType);
+        File file = new File(context.getExternalCacheDir(), "/temp/" + UUID.randomUUID() + "." + extension);
+        File parentFile = file.getParentFile();
+        if (parentFile != null) {
+            parentFile.mkdirs();
+        }
+        return file;
+    }
+
+    boolean isCallerSupplied() {
+        return callerSupplied;
+    }
+
+    /**
+     * Files can be read back once they are written, streams can't.
+     */
+    boolean isFile() {
+        return file != null;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return path returned to JS, or null for file descriptors which have no path
+     */
+    String getLocation() {
+        if (file != null) {
+            return "file://" + file.getPath();
+        }
+        return uri != null ? uri.toString() : null;
+    }
+
+    void requireUpright() {
+        uprightRequired = true;
+    }
+
+    /**
+     * @return whether exif orientation must not be left for viewers to apply
+     */
+    boolean isUprightRequired() {
+        return uprightRequired;
+    }
+
+    void setMetadataFilter(MetadataFilter metadataFilter) {
+        this.metadataFilter = metadataFilter;
+    }
+
+    MetadataFilter getMetadataFilter() {
+        return metadataFilter;
+    }
+
+    void setJpegEncoder(NativeJpegEncoder jpegEncoder) {
+        this.jpegEncoder = jpegEncoder;
+    }
+
+    NativeJpegEncoder getJpegEncoder() {
+        return jpegEncoder;
+    }
+
+    void setPaletteQuantizer(PaletteQuantizer paletteQuantizer) {
+        this.paletteQuantizer = paletteQuantizer;
+    }
+
+    PaletteQuantizer getPaletteQuantizer() {
+        return paletteQuantizer;
+    }
+
+    void useWebp() {
+        webp = true;
+    }
+
+    boolean isWebp() {
+        return webp;
+    }
+
+    void setFormatDecision(FormatSelector.Decision formatDecision) {
+        this.formatDecision = formatDecision;
+    }
+
+    FormatSelector.Decision getFormatDecision() {
+        return formatDecision;
+    }
+
+    void captureBytes() {
+        captured = new ByteArrayOutputStream();
+    }
+
+    byte[] getCapturedBytes() {
+        return captured != null ? captured.toByteArray() : null;
+    }
+
+    void computeHash() {
+        digest = ContentHash.newDigest();
+    }
+
+    /**
+     * @return hex SHA-256 of the written bytes, or null if hashing wasn't requested
+     */
+    String getHash() {
+        if (hash == null && digest != null) {
+            hash = ContentHash.toHex(digest.digest());
+        }
+        return hash;
+    }
+
+    long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * File descriptors are duplicated, so the caller keeps ownership of the one it passed in.
+     */
+    OutputStream open(Context context) throws IOException {
+        OutputStream stream;
+        if (file != null) {
+            stream = new FileOutputStream(file);
+        } else if (uri != null) {
+            stream = context.getContentResolver().openOutputStream(uri, "wt");
+            if (stream == null) {
+                throw new FileNotFoundException("Cannot open " + uri + " for writing");
+            }
+        } else {
+            stream = new ParcelFileDescriptor.AutoCloseOutputStream(ParcelFileDescriptor.fromFd(fd));
+        }
+
+        writtenBytes = 0;
+        if (digest != null) {
+            digest.reset();
+            hash = null;
+        }
+        return new BufferedOutputStream(new CountingOutputStream(stream));
+    }
+
+    /**
+     * Streams an already finished file (e.g. the original when no compression is needed) into
+     * the destination.
+     */
+    void copyFrom(Context context, ImageSource source) throws IOException {
+        copyFrom(context, source, null);
+    }
+
+    /**
+     * @param metadataFilter if not null, source is a JPEG whose metadata is rewritten on the way
+     */
+    void copyFrom(Context context, ImageSource source, MetadataFilter metadataFilter) throws IOException {
+        InputStream is = new BufferedInputStream(source.openInputStream());
+        try {
+            OutputStream os = open(context);
+            try {
+                if (metadataFilter != null) {
+                    metadataFilter.copy(is, os);
+                } else {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = is.read(buffer)) != -1) {
+                        os.write(buffer, 0, read);
+                    }
+                }
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Counts, and if requested captures and hashes, bytes on their way to the destination.
+     */
+    private class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            writtenBytes++;
+            if (captured != null) {
+                captured.write(b);
+            }
+            if (digest != null) {
+                digest.update((byte) b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            writtenBytes += len;
+            if (captured != null) {
+                captured.write(b, off, len);
+            }
+            if (digest != null) {
+                digest.update(b, off, len);
+            }
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.Bitmap;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reduces images to a palette of at most 256 colors for PNG-8 output, selected by the
+ * "compressImageFormat": "png8" option. Images which already have few enough colors (most
+ * screenshots of UI, graphics) keep them exactly. Otherwise colors are counted in a 5 bit per
+ * channel histogram, the palette is seeded by median cut over it and refined by a few k-means
+ * iterations. Pixels get the palette color of their histogram bucket, or with dithering the
+ * nearest one after Floyd-Steinberg error diffusion. Passes over pixels run on stripes in
+ * parallel.
+ */
+class PaletteQuantizer {
+    static final int MAX_COLORS = 256;
+
+    private static final String PNG8 = "png8";
+    private static final int KMEANS_ITERATIONS = 4;
+    private static final int MIN_STRIPE_ROWS = 32;
+    private static final int MIN_POINTS = 1024;
+
+    // 5 bits of red, green and blue, plus 8 levels of alpha for images which have it
+    private static final int OPAQUE_BUCKETS = 1 << 15;
+    private static final int ALPHA_BUCKETS = 8 << 15;
+    private static final int ALPHA_LEVELS = 7;
+
+    // exact palettes are collected in an open addressing set of this size
+    private static final int EXACT_TABLE_SIZE = 1024;
+
+    private final int maxColors;
+    private final boolean dither;
+
+    private PaletteQuantizer(int maxColors, boolean dither) {
+        this.maxColors = maxColors;
+        this.dither = dither;
+    }
+
+    /**
+     * @return null if images should be written as JPEG
+     */
+    static PaletteQuantizer fromOptions(ReadableMap options) {
+        if (!options.hasKey("compressImageFormat") || !PNG8.equals(options.getString("compressImageFormat"))) {
+            return null;
+        }
+        return withSettings(options);
+    }
+
+    /**
+     * Quantizer with the palette settings of the options, whichever format they ask for.
+     */
+    static PaletteQuantizer withSettings(ReadableMap options) {
+        int colors = options.hasKey("compressImageColors") ? options.getInt("compressImageColors") : MAX_COLORS;
+        boolean dither = options.hasKey("compressImageDither") && options.getBoolean("compressImageDither");
+        return new PaletteQuantizer(Math.max(2, Math.min(MAX_COLORS, colors)), dither);
+    }
+
+    /**
+     * Memory needed besides the bitmap: its pixels, their palette indices and a histogram per core.
+     */
+    static long workingBytes(int width, int height) {
+        return (long) width * height * 5 + (long) Stripes.getParallelism() * ALPHA_BUCKETS * 4;
+    }
+
+    static class Result {
+        final int width;
+        final int height;
+        // ARGB colors, the ones which aren't opaque come first
+        final int[] palette;
+        // palette index of every pixel, row by row
+        final byte[] indices;
+
+        Result(int width, int height, int[] palette, byte[] indices) {
+            this.width = width;
+            this.height = height;
+            this.palette = palette;
+            this.indices = indices;
+        }
+    }
+
+    Result quantize(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        byte[] indices = new byte[pixels.length];
+
+        boolean alpha = bitmap.hasAlpha();
+        if (alpha) {
+            // color of transparent pixels is arbitrary, so they all become one palette entry
+            for (int i = 0; i < pixels.length; i++) {
+                if ((pixels[i] >>> 24) == 0) {
+                    pixels[i] = 0;
+                }
+            }
+        }
+
+        int[] palette = findExactPalette(pixels, maxColors);
+        if (palette != null) {
+            mapExact(pixels, width, height, palette, indices);
+            return new Result(width, height, palette, indices);
+        }
+
+        int[] histogram = buildHistogram(pixels, width, height, alpha);
+        long[] points = toPoints(histogram);
+        double[] centers = new double[maxColors * 4];
+        int[] assignment = new int[points.length];
+
+        int colors = medianCut(points, maxColors, alpha, centers, assignment);
+        for (int i = 0; i < KMEANS_ITERATIONS; i++) {
+            if (!assign(points, centers, colors, alpha, assignment)) {
+                break;
+            }
+            updateCenters(points, centers, colors, alpha, assignment);
+        }
+
+        int[] table = histogram;
+        for (int i = 0; i < points.length; i++) {
+            table[bucketOf(points[i])] = assignment[i];
+        }
+
+        palette = mapBuckets(pixels, width, height, alpha, table, colors, indices);
+        if (dither) {
+            diffuse(pixels, width, height, alpha, palette, indices);
+        }
+        return new Result(width, height, palette, indices);
+    }
+
+    /**
+     * @return every color of the image sorted as unsigned ints (so translucent ones come first),
+     * or null if there are more than maxColors
+     */
+    private static int[] findExactPalette(int[] pixels, int maxColors) {
+        int[] table = new int[EXACT_TABLE_SIZE];
+        boolean[] used = new boolean[EXACT_TABLE_SIZE];
+        int count = 0;
+        int previous = ~pixels[0];
+
+        for (int pixel : pixels) {
+            // runs of the same color are common in the images this succeeds for
+            if (pixel == previous) {
+                continue;
+            }
+            previous = pixel;
+
+            int slot = (pixel * 0x9E3779B9) >>> 22;
+            while (used[slot] && table[slot] != pixel) {
+                slot = (slot + 1) & (EXACT_TABLE_SIZE - 1);
+            }
+            if (!used[slot]) {
+                if (++count > maxColors) {
+                    return null;
+                }
+                used[slot] = true;
+                table[slot] = pixel;
+            }
+        }
+
+        int[] keys = new int[count];
+        int n = 0;
+        for (int slot = 0; slot < EXACT_TABLE_SIZE; slot++) {
+            if (used[slot]) {
+                keys[n++] = table[slot] ^ Integer.MIN_VALUE;
+            }
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < count; i++) {
+            keys[i] ^= Integer.MIN_VALUE;
+        }
+        return keys;
+    }
+
+    private static void mapExact(final int[] pixels, final int width, int height, int[] palette, final byte[] indices) {
+        final int[] keys = new int[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            keys[i] = palette[i] ^ Integer.MIN_VALUE;
+        }
+
+        Stripes.run(height, MIN_STRIPE_ROWS, (from, to) -> {
+            int previous = 0;
+            int index = Arrays.binarySearch(keys, Integer.MIN_VALUE);
+            for (int i = from * width; i < to * width; i++) {
+                int pixel = pixels[i];
+                if (pixel != previous) {
+                    previous = pixel;
+                    index = Arrays.binarySearch(keys, pixel ^ Integer.MIN_VALUE);
+                }
+                indices[i] = (byte) index;
+            }
+        });
+    }
+
+    private static int bucket(int pixel, boolean alpha) {
+        int bucket = ((pixel >> 9) & 0x7c00) | ((pixel >> 6) & 0x3e0) | ((pixel >> 3) & 0x1f);
+        return alpha ? bucket | (((pixel >>> 24) * ALPHA_LEVELS + 127) / 255) << 15 : bucket;
+    }
+
+    /**
+     * @return channel value at the center of a bucket, 0 red, 1 green, 2 blue, 3 alpha
+     */
+    private static int channel(int bucket, int channel) {
+        if (channel == 3) {
+            return (bucket >> 15) * 255 / ALPHA_LEVELS;
+        }
+        return ((bucket >> (10 - channel * 5)) & 0x1f) << 3 | 4;
+    }
+
+    private static int[] buildHistogram(final int[] pixels, final int width, int height, final boolean alpha) {
+        final int[] histogram = new int[alpha ? ALPHA_BUCKETS : OPAQUE_BUCKETS];
+
+        Stripes.runPerCore(height, (from, to) -> {
+            int[] local = new int[histogram.length];
+            for (int i = from * width; i < to * width; i++) {
+                local[bucket(pixels[i], alpha)]++;
+            }
+            synchronized (histogram) {
+                for (int i = 0; i < local.length; i++) {
+                    histogram[i] += local[i];
+                }
+            }
+        });
+        return histogram;
+    }
+
+    // point layout: sort key (8 bits) | count (32 bits) | bucket (18 bits)
+
+    private static long[] toPoints(int[] histogram) {
+        int count = 0;
+        for (int value : histogram) {
+            if (value > 0) {
+                count++;
+            }
+        }
+
+        long[] points = new long[count];
+        int n = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            if (histogram[bucket] > 0) {
+                points[n++] = ((long) histogram[bucket] << 18) | bucket;
+            }
+        }
+        return points;
+    }
+
+    private static int bucketOf(long point) {
+        return (int) (point & 0x3ffff);
+    }
+
+    private static long countOf(long point) {
+        return (point >>> 18) & 0xffffffffL;
+    }
+
+    /**
+     * Splits the most populated, widest boxes of colors at their weighted median until there are
+     * maxColors of them.
+     *
+     * @return number of boxes, whose weighted means are written to centers and indices to assignment
+     */
+    private static int medianCut(long[] points, int maxColors, boolean alpha, double[] centers, int[] assignment) {
+        int channels = alpha ? 4 : 3;
+        int[] starts = new int[maxColors];
+        int[] ends = new int[maxColors];
+        long[] scores = new long[maxColors];
+        int[] splitChannels = new int[maxColors];
+
+        starts[0] = 0;
+        ends[0] = points.length;
+        int boxes = 1;
+        measure(points, 0, points.length, channels, scores, splitChannels, 0);
+
+        while (boxes < maxColors) {
+            int box = 0;
+            for (int i = 1; i < boxes; i++) {
+                if (scores[i] > scores[box]) {
+                    box = i;
+                }
+            }
+            if (scores[box] == 0) {
+                break;
+            }
+
+            int start = starts[box];
+            int end = ends[box];
+            int splitChannel = splitChannels[box];
+            long population = 0;
+            for (int i = start; i < end; i++) {
+                long point = points[i] & 0x3ffffffffffffL;
+                points[i] = ((long) channel(bucketOf(point), splitChannel) << 50) | point;
+                population += countOf(point);
+            }
+            Arrays.sort(points, start, end);
+
+            int split = start + 1;
+            long below = countOf(points[start]);
+            while (split < end - 1 && below * 2 < population) {
+                below += countOf(points[split++]);
+            }
+
+            ends[box] = split;
+            starts[boxes] = split;
+            ends[boxes] = end;
+            measure(points, start, split, channels, scores, splitChannels, box);
+            measure(points, split, end, channels, scores, splitChannels, boxes);
+            boxes++;
+        }
+
+        for (int box = 0; box < boxes; box++) {
+            for (int i = starts[box]; i < ends[box]; i++) {
+                assignment[i] = box;
+            }
+        }
+        updateCenters(points, centers, boxes, alpha, assignment);
+        return boxes;
+    }
+
+    private static void measure(long[] points, int start, int end, int channels, long[] scores, int[] splitChannels, int box) {
+        int[] min = {255, 255, 255, 255};
+        int[] max = {0, 0, 0, 0};
+        long population = 0;
+
+        for (int i = start; i < end; i++) {
+            int bucket = bucketOf(points[i]);
+            population += countOf(points[i]);
+            for (int c = 0; c < channels; c++) {
+                int value = channel(bucket, c);
+                min[c] = Math.min(min[c], value);
+                max[c] = Math.max(max[c], value);
+            }
+        }
+
+        int widest = 0;
+        for (int c = 1; c < channels; c++) {
+            if (max[c] - min[c] > max[widest] - min[widest]) {
+                widest = c;
+            }
+        }
+        splitChannels[box] = widest;
+        scores[box] = end - start > 1 ? population * (max[widest] - min[widest]) : 0;
+    }
+
+    /**
+     * Moves every point to its nearest center.
+     *
+     * @return false if nothing moved
+     */
+    private static boolean assign(final long[] points, final double[] centers, final int colors, final boolean alpha, final int[] assignment) {
+        final AtomicBoolean changed = new AtomicBoolean();
+
+        Stripes.run(points.length, MIN_POINTS, (from, to) -> {
+            boolean moved = false;
+            for (int i = from; i < to; i++) {
+                int bucket = bucketOf(points[i]);
+                int nearest = nearest(centers, colors, alpha, channel(bucket, 0), channel(bucket, 1), channel(bucket, 2), channel(bucket, 3));
+                if (nearest != assignment[i]) {
+                    assignment[i] = nearest;
+                    moved = true;
+                }
+            }
+            if (moved) {
+                changed.set(true);
+            }
+        });
+        return changed.get();
+    }
+
+    private static void updateCenters(long[] points, double[] centers, int colors, boolean alpha, int[] assignment) {
+        double[] sums = new double[colors * 4];
+        long[] counts = new long[colors];
+
+        for (int i = 0; i < points.length; i++) {
+            int bucket = bucketOf(points[i]);
+            long count = countOf(points[i]);
+            int color = assignment[i];
+            for (int c = 0; c < 4; c++) {
+                sums[color * 4 + c] += (double) count * (c < 3 || alpha ? channel(bucket, c) : 255);
+            }
+            counts[color] += count;
+        }
+
+        for (int color = 0; color < colors; color++) {
+            // empty clusters keep their center
+            if (counts[color] > 0) {
+                for (int c = 0; c < 4; c++) {
+                    centers[color * 4 + c] = sums[color * 4 + c] / counts[color];
+                }
+            }
+        }
+    }
+
+    private static int nearest(double[] centers, int colors, boolean alpha, int r, int g, int b, int a) {
+        int nearest = 0;
+        double best = Double.MAX_VALUE;
+        for (int color = 0; color < colors; color++) {
+            double dr = centers[color * 4] - r;
+            double dg = centers[color * 4 + 1] - g;
+            double db = centers[color * 4 + 2] - b;
+            double distance = dr * dr + dg * dg + db * db;
+            if (alpha) {
+                double da = centers[color * 4 + 3] - a;
+                distance += da * da;
+            }
+            if (distance < best) {
+                best = distance;
+                nearest = color;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Gives every pixel the color of its bucket. Palette colors are the exact means of the pixels
+     * they were given to, unused ones are dropped and translucent ones moved to the front.
+     */
+    private static int[] mapBuckets(final int[] pixels, final int width, int height, final boolean alpha, final int[] table, final int colors, final byte[] indices) {
+        final long[] sums = new long[colors * 5];
+
+        Stripes.runPerCore(height, (from, to) -> {
+            long[] local = new long[colors * 5];
+            for (int i = from * width; i < to * width; i++) {
+                int pixel = pixels[i];
+                int color = table[bucket(pixel, alpha)];
+                indices[i] = (byte) color;
+
+                int offset = color * 5;
+                local[offset] += pixel >>> 24;
+                local[offset + 1] += (pixel >> 16) & 0xff;
+                local[offset + 2] += (pixel >> 8) & 0xff;
+                local[offset + 3] += pixel & 0xff;
+                local[offset + 4]++;
+            }
+            synchronized (sums) {
+                for (int i = 0; i < local.length; i++) {
+                    sums[i] += local[i];
+                }
+            }
+        });
+
+        int[] means = new int[colors];
+        int used = 0;
+        for (int color = 0; color < colors; color++) {
+            long count = sums[color * 5 + 4];
+            if (count > 0) {
+                long half = count / 2;
+                int a = alpha ? (int) ((sums[color * 5] + half) / count) : 255;
+                int r = (int) ((sums[color * 5 + 1] + half) / count);
+                int g = (int) ((sums[color * 5 + 2] + half) / count);
+                int b = (int) ((sums[color * 5 + 3] + half) / count);
+                means[used++] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+
+        // new position of every used color
+        final int[] order = new int[colors];
+        int[] palette = new int[used];
+        int n = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int index = 0;
+            for (int color = 0; color < colors; color++) {
+                if (sums[color * 5 + 4] == 0) {
+                    continue;
+                }
+                int mean = means[index++];
+                boolean opaque = (mean >>> 24) == 255;
+                if (opaque == (pass == 1)) {
+                    order[color] = n;
+                    palette[n++] = mean;
+                }
+            }
+        }
+
+        boolean reordered = false;
+        for (int color = 0; color < colors; color++) {
+            reordered |= order[color] != color;
+        }
+        if (reordered) {
+            Stripes.run(height, MIN_STRIPE_ROWS, (from, to) -> {
+                for (int i = from * width; i < to * width; i++) {
+                    indices[i] = (byte) order[indices[i] & 0xff];
+                }
+            });
+        }
+        return palette;
+    }
+
+    /**
+     * Maps pixels again, diffusing the error of every pixel onto its neighbors (Floyd-Steinberg).
+     * Every stripe starts without error, seams between them aren't visible in practice. Nearest
+     * palette colors are looked up once per histogram bucket.
+     */
+    private static void diffuse(final int[] pixels, final int width, int height, final boolean alpha, final int[] palette, final byte[] indices) {
+        final int[] nearest = new int[alpha ? ALPHA_BUCKETS : OPAQUE_BUCKETS];
+        Arrays.fill(nearest, -1);
+
+        final double[] centers = new double[palette.length * 4];
+        for (int i = 0; i < palette.length; i++) {
+            centers[i * 4] = (palette[i] >> 16) & 0xff;
+            centers[i * 4 + 1] = (palette[i] >> 8) & 0xff;
+            centers[i * 4 + 2] = palette[i] & 0xff;
+            centers[i * 4 + 3] = palette[i] >>> 24;
+        }
+
+        Stripes.run(height, MIN_STRIPE_ROWS, (from, to) -> {
+            // errors (times 16) of the current and the next row, with a pixel of padding on both sides
+            int[] current = new int[(width + 2) * 4];
+            int[] next = new int[(width + 2) * 4];
+
+            for (int y = from; y < to; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = y * width + x;
+                    int pixel = pixels[i];
+                    int e = (x + 1) * 4;
+
+                    if (alpha && pixel == 0) {
+                        // transparent pixels stay exactly transparent and don't spread error
+                        indices[i] = (byte) lookup(nearest, centers, palette.length, alpha, 0);
+                        continue;
+                    }
+
+                    int a = alpha ? clamp((pixel >>> 24) + ((current[e + 3] + 8) >> 4)) : 255;
+                    int r = clamp(((pixel >> 16) & 0xff) + ((current[e] + 8) >> 4));
+                    int g = clamp(((pixel >> 8) & 0xff) + ((current[e + 1] + 8) >> 4));
+                    int b = clamp((pixel & 0xff) + ((current[e + 2] + 8) >> 4));
+
+                    int color = lookup(nearest, centers, palette.length, alpha, (a << 24) | (r << 16) | (g << 8) | b);
+                    indices[i] = (byte) color;
+
+                    int chosen = palette[color];
+                    spread(current, next, e, r - ((chosen >> 16) & 0xff));
+                    spread(current, next, e + 1, g - ((chosen >> 8) & 0xff));
+                    spread(current, next, e + 2, b - (chosen & 0xff));
+                    spread(current, next, e + 3, alpha ? a - (chosen >>> 24) : 0);
+                }
+
+                int[] swap = current;
+                current = next;
+                next = swap;
+                Arrays.fill(next, 0);
+            }
+        });
+    }
+
+    private static void spread(int[] current, int[] next, int e, int error) {
+        current[e + 4] += error * 7;
+        next[e - 4] += error * 3;
+        next[e] += error * 5;
+        next[e + 4] += error;
+    }
+
+    /**
+     * Nearest palette color of the bucket center. Stripes may compute the same bucket at the same
+     * time, they store the same value.
+     */
+    private static int lookup(int[] nearest, double[] centers, int colors, boolean alpha, int pixel) {
+        int bucket = bucket(pixel, alpha);
+        int color = nearest[bucket];
+        if (color < 0) {
+            color = nearest(centers, colors, alpha, channel(bucket, 0), channel(bucket, 1), channel(bucket, 2), channel(bucket, 3));
+            nearest[bucket] = color;
+        }
+        return color;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+}
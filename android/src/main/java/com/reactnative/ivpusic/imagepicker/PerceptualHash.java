@@ -0,0 +1,86 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Difference hash (dHash) of an image. Visually similar images end up with hashes which differ
+ * only in a few bits, so it is used to find near-identical shots (e.g. bursts) in a selection.
+ */
+class PerceptualHash {
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+
+    // size of the subsampled decode the hash is computed from
+    static final int SAMPLE_SIZE = HASH_WIDTH * 4;
+
+    static final int DEFAULT_DUPLICATE_THRESHOLD = 5;
+
+    static long compute(Bitmap thumbnail) {
+        Bitmap scaled = Bitmap.createScaledBitmap(thumbnail, HASH_WIDTH, HASH_HEIGHT, true);
+        int[] pixels = new int[HASH_WIDTH * HASH_HEIGHT];
+        scaled.getPixels(pixels, 0, HASH_WIDTH, 0, 0, HASH_WIDTH, HASH_HEIGHT);
+        if (scaled != thumbnail) {
+            scaled.recycle();
+        }
+
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = luminance(pixels[y * HASH_WIDTH + x]);
+                int right = luminance(pixels[y * HASH_WIDTH + x + 1]);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+
+        return hash;
+    }
+
+    static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    static String toHex(long hash) {
+        String hex = Long.toHexString(hash);
+        StringBuilder builder = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            builder.append('0');
+        }
+        return builder.append(hex).toString();
+    }
+
+    private static int luminance(int color) {
+        int r = (color >> 16) & 0xff;
+        int g = (color >> 8) & 0xff;
+        int b = color & 0xff;
+        return (r * 299 + g * 587 + b * 114) / 1000;
+    }
+
+    /**
+     * Hashes of items already accepted from one selection.
+     */
+    static class Batch {
+        private final int threshold;
+        private final List<Long> hashes = new ArrayList<>();
+
+        Batch(int threshold) {
+            this.threshold = threshold;
+        }
+
+        /**
+         * @return true if a similar image is already part of the batch, otherwise hash is added to the batch
+         */
+        synchronized boolean isNearDuplicate(long hash) {
+            for (long accepted : hashes) {
+                if (distance(accepted, hash) <= threshold) {
+                    return true;
+                }
+            }
+
+            hashes.add(hash);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sections of the processing pipeline, shown in system traces (Perfetto, systrace). While a trace
+ * log is running (see {@link #startLog(Context)}) the same events are also written to a file in
+ * the Chrome trace JSON format, so traces can be collected from devices without a profiler.
+ *
+ * Sections nest on the thread which began them and have to be ended on it. Work which waits in a
+ * queue or moves to another thread is traced with an async section, identified by a cookie.
+ */
+class PipelineTrace {
+    private static final String CATEGORY = "image-crop-picker";
+
+    private static final AtomicInteger cookies = new AtomicInteger();
+
+    // only set while a trace log is running, guarded by the class. log is also read without the
+    // lock, so sections don't contend for it when no log is running
+    private static File logFile;
+    private static volatile Writer log;
+    private static Set<Integer> namedThreads;
+    private static String separator;
+
+    static void begin(String name) {
+        Trace.beginSection(name);
+        logEvent(name, "B", -1);
+    }
+
+    static void end() {
+        logEvent(null, "E", -1);
+        Trace.endSection();
+    }
+
+    /**
+     * @return cookie to pass to {@link #endAsync(String, int)}, which may run on another thread
+     */
+    static int beginAsync(String name) {
+        int cookie = cookies.incrementAndGet();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(name, cookie);
+        }
+        logEvent(name, "b", cookie);
+        return cookie;
+    }
+
+    static void endAsync(String name, int cookie) {
+        logEvent(name, "e", cookie);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(name, cookie);
+        }
+        flushLog();
+    }
+
+    /**
+     * Starts writing events to a new file in the app's external files directory (internal when
+     * there is no external storage), finishing the log which was running before.
+     *
+     * @return the file events are written to
+     */
+    static synchronized File startLog(Context context) throws IOException {
+        stopLog();
+
+        File directory = context.getExternalFilesDir(null);
+        if (directory == null) {
+            directory = context.getFilesDir();
+        }
+        File file = new File(directory, "image-crop-picker-trace-" + System.currentTimeMillis() + ".json");
+
+        // the array format stays readable when the closing bracket is missing, e.g. after a crash
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        try {
+            writer.write("[");
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+
+        // log is read without the lock, so it is published only once the rest is set
+        logFile = file;
+        namedThreads = new HashSet<>();
+        separator = "\n";
+        log = writer;
+        Log.d("image-crop-picker", "Writing trace log to " + file);
+        return file;
+    }
+
+    /**
+     * @return the finished log, null if no log was running
+     */
+    static synchronized File stopLog() {
+        if (log == null) {
+            return null;
+        }
+
+        File file = logFile;
+        try {
+            log.write("\n]\n");
+            log.close();
+        } catch (IOException e) {
+            Log.w("image-crop-picker", "Cannot finish trace log", e);
+        }
+        log = null;
+        logFile = null;
+        namedThreads = null;
+        return file;
+    }
+
+    private static void logEvent(String name, String phase, int cookie) {
+        if (log == null) {
+            return;
+        }
+
+        synchronized (PipelineTrace.class) {
+            writeEvent(name, phase, cookie);
+        }
+    }
+
+    // caller holds the lock
+    private static void writeEvent(String name, String phase, int cookie) {
+        if (log == null) {
+            return;
+        }
+
+        long timestamp = SystemClock.elapsedRealtimeNanos() / 1000;
+        int pid = Process.myPid();
+        int tid = Process.myTid();
+        StringBuilder event = new StringBuilder(128);
+        if (namedThreads.add(tid)) {
+            event.append(separator)
+                    .append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(pid)
+                    .append(",\"tid\":").append(tid)
+                    .append(",\"args\":{\"name\":\"").append(Thread.currentThread().getName().replace("\"", "'")).append("\"}}");
+            separator = ",\n";
+        }
+
+        event.append(separator).append("{\"ph\":\"").append(phase).append('"');
+        if (name != null) {
+            event.append(",\"name\":\"").append(name).append('"');
+        }
+        event.append(",\"cat\":\"").append(CATEGORY).append('"');
+        if (cookie >= 0) {
+            event.append(",\"id\":").append(cookie);
+        }
+        event.append(",\"ts\":").append(timestamp)
+                .append(",\"pid\":").append(pid)
+                .append(",\"tid\":").append(tid)
+                .append('}');
+        separator = ",\n";
+
+        try {
+            log.write(event.toString());
+        } catch (IOException e) {
+            Log.w("image-crop-picker", "Cannot write trace log, stopping it", e);
+            stopLog();
+        }
+    }
+
+    private static void flushLog() {
+        if (log == null) {
+            return;
+        }
+
+        synchronized (PipelineTrace.class) {
+            if (log == null) {
+                return;
+            }
+
+            try {
+                log.flush();
+            } catch (IOException e) {
+                Log.w("image-crop-picker", "Cannot write trace log, stopping it", e);
+                stopLog();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.Bitmap;
+
+import java.util.Locale;
+
+/**
+ * Compact image placeholders (BlurHash and dominant color) computed from a tiny decode, so
+ * lists of picked images can render something before the actual files are loaded.
+ *
+ * @see <a href="https://github.com/woltapp/blurhash/blob/master/Algorithm.md">BlurHash algorithm</a>
+ */
+class Placeholder {
+    // size of the subsampled decode placeholders are computed from
+    static final int SAMPLE_SIZE = 32;
+
+    private static final int MAX_COMPONENTS = 4;
+    private static final int MIN_COMPONENTS = 3;
+    private static final String BASE83_CHARACTERS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+            float value = i / 255f;
+            SRGB_TO_LINEAR[i] = value <= 0.04045f
+                    ? value / 12.92f
+                    : (float) Math.pow((value + 0.055f) / 1.055f, 2.4f);
+        }
+    }
+
+    final String blurHash;
+    final String dominantColor;
+
+    private Placeholder(String blurHash, String dominantColor) {
+        this.blurHash = blurHash;
+        this.dominantColor = dominantColor;
+    }
+
+    static Placeholder compute(Bitmap thumbnail) {
+        int sourceWidth = thumbnail.getWidth();
+        int sourceHeight = thumbnail.getHeight();
+        float scale = Math.min(1f, (float) SAMPLE_SIZE / Math.max(sourceWidth, sourceHeight));
+        int width = Math.max(1, Math.round(sourceWidth * scale));
+        int height = Math.max(1, Math.round(sourceHeight * scale));
+
+        Bitmap scaled = Bitmap.createScaledBitmap(thumbnail, width, height, true);
+        int[] pixels = new int[width * height];
+        scaled.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (scaled != thumbnail) {
+            scaled.recycle();
+        }
+
+        int componentsX = width >= height ? MAX_COMPONENTS : MIN_COMPONENTS;
+        int componentsY = width >= height ? MIN_COMPONENTS : MAX_COMPONENTS;
+
+        return new Placeholder(
+                encodeBlurHash(pixels, width, height, componentsX, componentsY),
+                findDominantColor(pixels)
+        );
+    }
+
+    private static String encodeBlurHash(int[] pixels, int width, int height, int componentsX, int componentsY) {
+        float[] red = new float[pixels.length];
+        float[] green = new float[pixels.length];
+        float[] blue = new float[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            red[i] = SRGB_TO_LINEAR[(pixels[i] >> 16) & 0xff];
+            green[i] = SRGB_TO_LINEAR[(pixels[i] >> 8) & 0xff];
+            blue[i] = SRGB_TO_LINEAR[pixels[i] & 0xff];
+        }
+
+        float[][] cosX = cosines(componentsX, width);
+        float[][] cosY = cosines(componentsY, height);
+
+        float[][] factors = new float[componentsX * componentsY][3];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                float r = 0, g = 0, b = 0;
+                for (int y = 0; y < height; y++) {
+                    float basisY = cosY[j][y];
+                    int row = y * width;
+                    for (int x = 0; x < width; x++) {
+                        float basis = cosX[i][x] * basisY;
+                        r += basis * red[row + x];
+                        g += basis * green[row + x];
+                        b += basis * blue[row + x];
+                    }
+                }
+
+                float normalisation = (i == 0 && j == 0 ? 1f : 2f) / (width * height);
+                float[] factor = factors[j * componentsX + i];
+                factor[0] = r * normalisation;
+                factor[1] = g * normalisation;
+                factor[2] = b * normalisation;
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        encode83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+
+        float maximumValue = 0;
+        for (int i = 1; i < factors.length; i++) {
+            for (float value : factors[i]) {
+                maximumValue = Math.max(maximumValue, Math.abs(value));
+            }
+        }
+
+        int quantisedMaximumValue = (int) Math.max(0, Math.min(82, Math.floor(maximumValue * 166 - 0.5)));
+        float acScale = (quantisedMaximumValue + 1) / 166f;
+        encode83(hash, quantisedMaximumValue, 1);
+
+        float[] dc = factors[0];
+        encode83(hash, (linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4);
+
+        for (int i = 1; i < factors.length; i++) {
+            float[] ac = factors[i];
+            encode83(hash, quantiseAc(ac[0], acScale) * 19 * 19 + quantiseAc(ac[1], acScale) * 19 + quantiseAc(ac[2], acScale), 2);
+        }
+
+        return hash.toString();
+    }
+
+    private static float[][] cosines(int components, int size) {
+        float[][] table = new float[components][size];
+        for (int component = 0; component < components; component++) {
+            for (int position = 0; position < size; position++) {
+                table[component][position] = (float) Math.cos(Math.PI * component * position / size);
+            }
+        }
+        return table;
+    }
+
+    private static int quantiseAc(float value, float maximumValue) {
+        double normalized = value / maximumValue;
+        double signPow = Math.copySign(Math.sqrt(Math.abs(normalized)), normalized);
+        return (int) Math.max(0, Math.min(18, Math.floor(signPow * 9 + 9.5)));
+    }
+
+    private static int linearToSrgb(float value) {
+        float v = Math.max(0, Math.min(1, value));
+        if (v <= 0.0031308f) {
+            return (int) (v * 12.92f * 255 + 0.5f);
+        }
+        return (int) ((1.055f * Math.pow(v, 1 / 2.4f) - 0.055f) * 255 + 0.5f);
+    }
+
+    private static void encode83(StringBuilder builder, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (value / pow83(length - i)) % 83;
+            builder.append(BASE83_CHARACTERS.charAt(digit));
+        }
+    }
+
+    private static int pow83(int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 83;
+        }
+        return result;
+    }
+
+    /**
+     * Most common color, after bucketing colors into 4 bits per channel, averaged within its bucket.
+     */
+    private static String findDominantColor(int[] pixels) {
+        int[] counts = new int[4096];
+        long[] sums = new long[4096 * 3];
+        int bestBucket = -1;
+
+        for (int pixel : pixels) {
+            // fully transparent pixels carry no color
+            if ((pixel >>> 24) == 0) {
+                continue;
+            }
+
+            int r = (pixel >> 16) & 0xff;
+            int g = (pixel >> 8) & 0xff;
+            int b = pixel & 0xff;
+            int bucket = ((r >> 4) << 8) | ((g >> 4) << 4) | (b >> 4);
+
+            counts[bucket]++;
+            sums[bucket * 3] += r;
+            sums[bucket * 3 + 1] += g;
+            sums[bucket * 3 + 2] += b;
+
+            if (bestBucket < 0 || counts[bucket] > counts[bestBucket]) {
+                bestBucket = bucket;
+            }
+        }
+
+        if (bestBucket < 0) {
+            return null;
+        }
+
+        int count = counts[bestBucket];
+        return String.format(Locale.US, "#%02x%02x%02x",
+                sums[bestBucket * 3] / count,
+                sums[bestBucket * 3 + 1] / count,
+                sums[bestBucket * 3 + 2] / count);
+    }
+}
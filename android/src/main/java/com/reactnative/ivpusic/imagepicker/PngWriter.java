@@ -0,0 +1,131 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes palette (PNG-8) images made by {@link PaletteQuantizer}. Rows use filter type None,
+ * which is what compresses best for indexed color, and are packed to 1, 2 or 4 bits per pixel
+ * when the palette is small enough.
+ */
+class PngWriter {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    static void write(PaletteQuantizer.Result image, OutputStream out) throws IOException {
+        int[] palette = image.palette;
+        int bitDepth = palette.length <= 2 ? 1 : palette.length <= 4 ? 2 : palette.length <= 16 ? 4 : 8;
+        out.write(SIGNATURE);
+
+        byte[] header = new byte[13];
+        writeInt(header, 0, image.width);
+        writeInt(header, 4, image.height);
+        header[8] = (byte) bitDepth;
+        header[9] = COLOR_TYPE_PALETTE;
+        writeChunk(out, "IHDR", header, header.length);
+
+        byte[] colors = new byte[palette.length * 3];
+        int translucent = 0;
+        for (int i = 0; i < palette.length; i++) {
+            colors[i * 3] = (byte) (palette[i] >> 16);
+            colors[i * 3 + 1] = (byte) (palette[i] >> 8);
+            colors[i * 3 + 2] = (byte) palette[i];
+            if ((palette[i] >>> 24) != 255) {
+                translucent = i + 1;
+            }
+        }
+        writeChunk(out, "PLTE", colors, colors.length);
+
+        // alpha of the entries which aren't opaque, the palette has them first
+        if (translucent > 0) {
+            byte[] alphas = new byte[translucent];
+            for (int i = 0; i < translucent; i++) {
+                alphas[i] = (byte) (palette[i] >>> 24);
+            }
+            writeChunk(out, "tRNS", alphas, alphas.length);
+        }
+
+        writeImageData(image, bitDepth, out);
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    private static void writeImageData(PaletteQuantizer.Result image, int bitDepth, OutputStream out) throws IOException {
+        int width = image.width;
+        byte[] indices = image.indices;
+        byte[] row = new byte[1 + (width * bitDepth + 7) / 8];
+        int pixelsPerByte = 8 / bitDepth;
+
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int buffered = 0;
+        Deflater deflater = new Deflater();
+
+        try {
+            for (int y = 0; y < image.height; y++) {
+                int offset = y * width;
+                if (bitDepth == 8) {
+                    System.arraycopy(indices, offset, row, 1, width);
+                } else {
+                    for (int i = 1; i < row.length; i++) {
+                        row[i] = 0;
+                    }
+                    for (int x = 0; x < width; x++) {
+                        int shift = 8 - bitDepth * (x % pixelsPerByte + 1);
+                        row[1 + x / pixelsPerByte] |= (byte) ((indices[offset + x] & 0xff) << shift);
+                    }
+                }
+
+                deflater.setInput(row);
+                while (!deflater.needsInput()) {
+                    buffered += deflater.deflate(buffer, buffered, buffer.length - buffered);
+                    if (buffered == buffer.length) {
+                        writeChunk(out, "IDAT", buffer, buffered);
+                        buffered = 0;
+                    }
+                }
+            }
+
+            deflater.finish();
+            while (!deflater.finished()) {
+                buffered += deflater.deflate(buffer, buffered, buffer.length - buffered);
+                if (buffered == buffer.length) {
+                    writeChunk(out, "IDAT", buffer, buffered);
+                    buffered = 0;
+                }
+            }
+            if (buffered > 0) {
+                writeChunk(out, "IDAT", buffer, buffered);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] prefix = new byte[8];
+        writeInt(prefix, 0, length);
+        for (int i = 0; i < 4; i++) {
+            prefix[4 + i] = (byte) type.charAt(i);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(prefix, 4, 4);
+        crc.update(data, 0, length);
+
+        byte[] suffix = new byte[4];
+        writeInt(suffix, 0, (int) crc.getValue());
+
+        out.write(prefix);
+        out.write(data, 0, length);
+        out.write(suffix);
+    }
+
+    private static void writeInt(byte[] data, int pos, int value) {
+        data[pos] = (byte) (value >> 24);
+        data[pos + 1] = (byte) (value >> 16);
+        data[pos + 2] = (byte) (value >> 8);
+        data[pos + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,76 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared background pool for headless image work. Sized to the number of cores, memory use of
+ * concurrently running items is limited separately by {@link DecodeBudget}.
+ */
+class ProcessingExecutor {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor instance;
+    // lowered by MemoryPressure while the system is short on memory
+    private static int concurrency = getCores();
+
+    static synchronized ExecutorService get() {
+        if (instance == null) {
+            int threads = concurrency;
+            instance = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+            // don't keep idle threads around between batches
+            instance.allowCoreThreadTimeOut(true);
+        }
+
+        return instance;
+    }
+
+    static int getCores() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    static synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Changes the number of items which run at once. Running items finish, extra threads exit
+     * once they are idle.
+     */
+    static synchronized void setConcurrency(int threads) {
+        concurrency = Math.max(1, threads);
+        if (instance == null) {
+            return;
+        }
+
+        // core size can't exceed the maximum size at any point
+        if (concurrency < instance.getCorePoolSize()) {
+            instance.setCorePoolSize(concurrency);
+            instance.setMaximumPoolSize(concurrency);
+        } else {
+            instance.setMaximumPoolSize(concurrency);
+            instance.setCorePoolSize(concurrency);
+        }
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "image-crop-picker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -9,13 +9,24 @@ import android.os.Build;
 import android.os.Environment;
 import android.provider.DocumentsContract;
 import android.provider.MediaStore;
+import android.text.TextUtils;
+import android.util.Log;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 class RealPathUtil {
+    // stay well below SQLite's limit of host parameters per statement
+    private static final int MAX_BATCH_SIZE = 500;
+
     @TargetApi(Build.VERSION_CODES.KITKAT)
     static String getRealPathFromURI(final Context context, final Uri uri) throws IOException {
 
@@ -93,6 +104,184 @@ class RealPathUtil {
         return null;
     }
 
+    /**
+     * Resolves MediaStore columns for all given Uris with one query per collection, instead of
+     * querying every Uri on its own. Uris which are not backed by a MediaStore collection, or
+     * which the provider doesn't allow to be queried in bulk, are left out of the result and
+     * should be resolved one by one.
+     *
+     * @param context The context.
+     * @param uris Selected Uris.
+     * @return Resolved records keyed by the Uri they were requested for.
+     */
+    static Map<Uri, MediaRecord> resolveBatch(final Context context, final List<Uri> uris) {
+        Map<Uri, MediaRecord> records = new HashMap<>();
+        Map<Uri, Map<String, Uri>> collections = new LinkedHashMap<>();
+
+        for (Uri uri : uris) {
+            CollectionItem collectionItem = getCollectionItem(context, uri);
+            if (collectionItem == null) {
+                continue;
+            }
+
+            Map<String, Uri> items = collections.get(collectionItem.collection);
+            if (items == null) {
+                items = new LinkedHashMap<>();
+                collections.put(collectionItem.collection, items);
+            }
+            items.put(collectionItem.id, uri);
+        }
+
+        for (Map.Entry<Uri, Map<String, Uri>> entry : collections.entrySet()) {
+            List<String> ids = new ArrayList<>(entry.getValue().keySet());
+
+            for (int start = 0; start < ids.size(); start += MAX_BATCH_SIZE) {
+                List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_BATCH_SIZE));
+                queryCollection(context, entry.getKey(), chunk, entry.getValue(), records);
+            }
+        }
+
+        return records;
+    }
+
+    private static class CollectionItem {
+        final Uri collection;
+        final String id;
+
+        CollectionItem(Uri collection, String id) {
+            this.collection = collection;
+            this.id = id;
+        }
+    }
+
+    /**
+     * @return MediaStore collection and row id backing the Uri, or null if there isn't one.
+     */
+    private static CollectionItem getCollectionItem(Context context, Uri uri) {
+        if (!"content".equalsIgnoreCase(uri.getScheme())) {
+            return null;
+        }
+
+        if (isMediaDocument(uri) && DocumentsContract.isDocumentUri(context, uri)) {
+            final String[] split = DocumentsContract.getDocumentId(uri).split(":");
+            if (split.length < 2 || !isNumeric(split[1])) {
+                return null;
+            }
+
+            if ("image".equals(split[0])) {
+                return new CollectionItem(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, split[1]);
+            } else if ("video".equals(split[0])) {
+                return new CollectionItem(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, split[1]);
+            }
+
+            return null;
+        }
+
+        // content://media/<volume>/<type>/media/<id>, including photo picker Uris
+        if (MediaStore.AUTHORITY.equals(uri.getAuthority())) {
+            List<String> segments = uri.getPathSegments();
+            if (segments.size() < 2) {
+                return null;
+            }
+
+            String id = segments.get(segments.size() - 1);
+            if (!isNumeric(id)) {
+                return null;
+            }
+
+            Uri collection = uri.buildUpon()
+                    .path(TextUtils.join("/", segments.subList(0, segments.size() - 1)))
+                    .build();
+            return new CollectionItem(collection, id);
+        }
+
+        return null;
+    }
+
+    private static void queryCollection(Context context, Uri collection, List<String> ids,
+                                        Map<String, Uri> requested, Map<Uri, MediaRecord> records) {
+        List<String> projection = new ArrayList<>(Arrays.asList(
+                MediaStore.MediaColumns._ID,
+                MediaStore.MediaColumns.DATA,
+                MediaStore.MediaColumns.DISPLAY_NAME,
+                MediaStore.MediaColumns.SIZE,
+                MediaStore.MediaColumns.MIME_TYPE,
+                MediaStore.MediaColumns.WIDTH,
+                MediaStore.MediaColumns.HEIGHT,
+                MediaStore.MediaColumns.DATE_MODIFIED
+        ));
+
+        // orientation is available for every media type only since Q
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q || collection.getPathSegments().contains("images")) {
+            projection.add(MediaStore.Images.ImageColumns.ORIENTATION);
+        }
+
+        StringBuilder selection = new StringBuilder(MediaStore.MediaColumns._ID).append(" IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        selection.append(")");
+
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(collection, projection.toArray(new String[0]),
+                    selection.toString(), ids.toArray(new String[0]), null);
+            if (cursor == null) {
+                return;
+            }
+
+            final int idIndex = cursor.getColumnIndex(MediaStore.MediaColumns._ID);
+            while (cursor.moveToNext()) {
+                Uri uri = idIndex > -1 ? requested.get(cursor.getString(idIndex)) : null;
+                if (uri == null) {
+                    continue;
+                }
+
+                MediaRecord record = new MediaRecord();
+                record.path = getString(cursor, MediaStore.MediaColumns.DATA);
+                record.displayName = getString(cursor, MediaStore.MediaColumns.DISPLAY_NAME);
+                record.mimeType = getString(cursor, MediaStore.MediaColumns.MIME_TYPE);
+                record.size = getLong(cursor, MediaStore.MediaColumns.SIZE, -1);
+                record.width = (int) getLong(cursor, MediaStore.MediaColumns.WIDTH, 0);
+                record.height = (int) getLong(cursor, MediaStore.MediaColumns.HEIGHT, 0);
+                record.orientation = (int) getLong(cursor, MediaStore.Images.ImageColumns.ORIENTATION, -1);
+                record.dateModified = getLong(cursor, MediaStore.MediaColumns.DATE_MODIFIED, -1);
+
+                records.put(uri, record);
+            }
+        } catch (Exception e) {
+            // some providers (e.g. photo picker) only allow querying single items
+            Log.w("image-crop-picker", "Batch query of " + collection + " failed, falling back to single queries", e);
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        final int index = cursor.getColumnIndex(column);
+        return index > -1 && !cursor.isNull(index) ? cursor.getString(index) : null;
+    }
+
+    private static long getLong(Cursor cursor, String column, long fallback) {
+        final int index = cursor.getColumnIndex(column);
+        return index > -1 && !cursor.isNull(index) ? cursor.getLong(index) : fallback;
+    }
+
+    private static boolean isNumeric(String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * If an image/video has been selected from a cloud storage, this method
      * should be call to download the file in the cache folder.
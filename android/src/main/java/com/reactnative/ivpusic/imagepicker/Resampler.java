@@ -0,0 +1,326 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Separable resampler selected by the "resizeFilter" option, used instead of bilinear
+ * createScaledBitmap. Every output pixel is computed from all source pixels under the (scaled)
+ * kernel, so large downscales don't alias. Both passes work on int[] ARGB rows, split into
+ * horizontal stripes which run in parallel (see {@link Stripes}).
+ */
+class Resampler {
+    enum Filter {
+        BOX(0.5),
+        BILINEAR(1),
+        LANCZOS(3);
+
+        // kernel radius in source pixels (at 1:1 scale)
+        final double support;
+
+        Filter(double support) {
+            this.support = support;
+        }
+
+        double weight(double x) {
+            switch (this) {
+                case BOX:
+                    return x >= -0.5 && x < 0.5 ? 1 : 0;
+                case BILINEAR:
+                    x = Math.abs(x);
+                    return x < 1 ? 1 - x : 0;
+                default:
+                    return x > -3 && x < 3 ? sinc(x) * sinc(x / 3) : 0;
+            }
+        }
+
+        private static double sinc(double x) {
+            if (x == 0) {
+                return 1;
+            }
+            x *= Math.PI;
+            return Math.sin(x) / x;
+        }
+
+        /**
+         * @return null for the default (createScaledBitmap) scaling
+         */
+        static Filter fromName(String name) {
+            if ("box".equals(name)) {
+                return BOX;
+            }
+            if ("bilinear".equals(name)) {
+                return BILINEAR;
+            }
+            if ("lanczos".equals(name)) {
+                return LANCZOS;
+            }
+            return null;
+        }
+    }
+
+    private static final int PRECISION_BITS = 14;
+    private static final int CACHED_WEIGHTS = 16;
+    private static final int MIN_STRIPE_ROWS = 16;
+
+    // weight tables for recently used (filter, source size, output size), shared by all images
+    private static final Map<String, Weights> weightsCache = new LinkedHashMap<String, Weights>(CACHED_WEIGHTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Weights> eldest) {
+            return size() > CACHED_WEIGHTS;
+        }
+    };
+
+    /**
+     * Memory needed besides the source and output bitmaps (the horizontally scaled image).
+     */
+    static long workingBytes(int sourceHeight, int width) {
+        return (long) sourceHeight * width * 4;
+    }
+
+    static Bitmap scale(final Bitmap source, final int width, final int height, Filter filter) {
+        final int sourceWidth = source.getWidth();
+        Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        final Bitmap output = Bitmap.createBitmap(width, height, config);
+
+        resample((rows, from, to) -> source.getPixels(rows, 0, sourceWidth, 0, from, sourceWidth, to - from),
+                sourceWidth, source.getHeight(), source.hasAlpha(), width, height, filter, new int[width * source.getHeight()],
+                (rows, from, to) -> {
+                    synchronized (output) {
+                        output.setPixels(rows, 0, width, 0, from, width, to - from);
+                    }
+                });
+
+        return output;
+    }
+
+    /**
+     * Scales ARGB pixels into a buffer the caller reuses, for frames of animations.
+     *
+     * @param intermediate at least width * sourceHeight pixels, see {@link #workingBytes}
+     */
+    static void scale(final int[] source, final int sourceWidth, int sourceHeight, final int[] output, final int width, int height, Filter filter, int[] intermediate) {
+        resample((rows, from, to) -> System.arraycopy(source, from * sourceWidth, rows, 0, (to - from) * sourceWidth),
+                sourceWidth, sourceHeight, true, width, height, filter, intermediate,
+                (rows, from, to) -> System.arraycopy(rows, 0, output, from * width, (to - from) * width));
+    }
+
+    // copies rows [from, to) of an image from or to a stripe buffer
+    private interface Rows {
+        void copy(int[] rows, int from, int to);
+    }
+
+    private static void resample(
+            final Rows source,
+            final int sourceWidth,
+            final int sourceHeight,
+            final boolean alpha,
+            final int width,
+            final int height,
+            Filter filter,
+            final int[] intermediate,
+            final Rows output
+    ) {
+        final Weights horizontal = getWeights(filter, sourceWidth, width);
+        final Weights vertical = getWeights(filter, sourceHeight, height);
+
+        Stripes.run(sourceHeight, MIN_STRIPE_ROWS, (from, to) -> {
+            int[] rows = new int[sourceWidth * (to - from)];
+            source.copy(rows, from, to);
+            if (alpha) {
+                premultiply(rows);
+            }
+            for (int y = from; y < to; y++) {
+                resampleRow(rows, (y - from) * sourceWidth, intermediate, y * width, horizontal);
+            }
+        });
+
+        Stripes.run(height, MIN_STRIPE_ROWS, (from, to) -> {
+            int[] rows = new int[width * (to - from)];
+            int[] sums = new int[width * 4];
+            for (int y = from; y < to; y++) {
+                resampleColumns(intermediate, width, rows, (y - from) * width, vertical, y, sums);
+            }
+            if (alpha) {
+                unpremultiply(rows);
+            }
+            output.copy(rows, from, to);
+        });
+    }
+
+    /**
+     * Fixed point kernel weights of every output pixel along one axis.
+     */
+    static class Weights {
+        final int[] starts;
+        final int[] counts;
+        final int taps;
+        // taps weights per output pixel
+        final int[] values;
+
+        Weights(int[] starts, int[] counts, int taps, int[] values) {
+            this.starts = starts;
+            this.counts = counts;
+            this.taps = taps;
+            this.values = values;
+        }
+    }
+
+    static void clearCache() {
+        synchronized (weightsCache) {
+            weightsCache.clear();
+        }
+    }
+
+    static Weights getWeights(Filter filter, int sourceSize, int size) {
+        String key = filter + ":" + sourceSize + ":" + size;
+        synchronized (weightsCache) {
+            Weights weights = weightsCache.get(key);
+            if (weights == null) {
+                weights = computeWeights(filter, sourceSize, size);
+                weightsCache.put(key, weights);
+            }
+            return weights;
+        }
+    }
+
+    private static Weights computeWeights(Filter filter, int sourceSize, int size) {
+        double scale = (double) sourceSize / size;
+        // kernel is stretched when downscaling, so it covers every source pixel
+        double filterScale = Math.max(1, scale);
+        double support = filter.support * filterScale;
+        int taps = (int) Math.ceil(support) * 2 + 1;
+
+        int[] starts = new int[size];
+        int[] counts = new int[size];
+        int[] values = new int[size * taps];
+        double[] kernel = new double[taps];
+
+        for (int i = 0; i < size; i++) {
+            double center = (i + 0.5) * scale;
+            int start = Math.max(0, (int) (center - support + 0.5));
+            int end = Math.min(sourceSize, (int) (center + support + 0.5));
+            int count = Math.min(taps, end - start);
+
+            double total = 0;
+            for (int k = 0; k < count; k++) {
+                kernel[k] = filter.weight((start + k - center + 0.5) / filterScale);
+                total += kernel[k];
+            }
+
+            for (int k = 0; k < count; k++) {
+                double weight = total != 0 ? kernel[k] / total : 0;
+                values[i * taps + k] = (int) Math.round(weight * (1 << PRECISION_BITS));
+            }
+            starts[i] = start;
+            counts[i] = count;
+        }
+
+        return new Weights(starts, counts, taps, values);
+    }
+
+    private static void resampleRow(int[] source, int sourceOffset, int[] output, int outputOffset, Weights weights) {
+        int[] values = weights.values;
+        int taps = weights.taps;
+
+        for (int x = 0; x < weights.starts.length; x++) {
+            int a = 1 << (PRECISION_BITS - 1);
+            int r = a;
+            int g = a;
+            int b = a;
+            int from = sourceOffset + weights.starts[x];
+            int count = weights.counts[x];
+
+            for (int k = 0; k < count; k++) {
+                int weight = values[x * taps + k];
+                int pixel = source[from + k];
+                a += (pixel >>> 24) * weight;
+                r += ((pixel >> 16) & 0xff) * weight;
+                g += ((pixel >> 8) & 0xff) * weight;
+                b += (pixel & 0xff) * weight;
+            }
+
+            output[outputOffset + x] = pack(a, r, g, b);
+        }
+    }
+
+    /**
+     * Computes output row y, source rows are added one at a time so they are read sequentially.
+     *
+     * @param sums scratch space for 4 channels of width pixels
+     */
+    private static void resampleColumns(int[] source, int width, int[] output, int outputOffset, Weights weights, int y, int[] sums) {
+        int[] values = weights.values;
+        int from = weights.starts[y];
+        int count = weights.counts[y];
+        int base = y * weights.taps;
+
+        Arrays.fill(sums, 0, width * 4, 1 << (PRECISION_BITS - 1));
+        for (int k = 0; k < count; k++) {
+            int weight = values[base + k];
+            int row = (from + k) * width;
+
+            for (int x = 0; x < width; x++) {
+                int pixel = source[row + x];
+                int i = x * 4;
+                sums[i] += (pixel >>> 24) * weight;
+                sums[i + 1] += ((pixel >> 16) & 0xff) * weight;
+                sums[i + 2] += ((pixel >> 8) & 0xff) * weight;
+                sums[i + 3] += (pixel & 0xff) * weight;
+            }
+        }
+
+        for (int x = 0; x < width; x++) {
+            int i = x * 4;
+            output[outputOffset + x] = pack(sums[i], sums[i + 1], sums[i + 2], sums[i + 3]);
+        }
+    }
+
+    private static int pack(int a, int r, int g, int b) {
+        return (clamp(a >> PRECISION_BITS) << 24) | (clamp(r >> PRECISION_BITS) << 16)
+                | (clamp(g >> PRECISION_BITS) << 8) | clamp(b >> PRECISION_BITS);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
+    /**
+     * Colors are weighted by alpha while filtering, otherwise transparent pixels (whose color is
+     * arbitrary) bleed into the edges of opaque ones.
+     */
+    private static void premultiply(int[] pixels) {
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            int a = pixel >>> 24;
+            if (a == 255) {
+                continue;
+            }
+            int r = (((pixel >> 16) & 0xff) * a + 127) / 255;
+            int g = (((pixel >> 8) & 0xff) * a + 127) / 255;
+            int b = ((pixel & 0xff) * a + 127) / 255;
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private static void unpremultiply(int[] pixels) {
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            int a = pixel >>> 24;
+            if (a == 255) {
+                continue;
+            }
+            if (a == 0) {
+                pixels[i] = 0;
+                continue;
+            }
+            int r = Math.min(255, (((pixel >> 16) & 0xff) * 255 + a / 2) / a);
+            int g = Math.min(255, (((pixel >> 8) & 0xff) * 255 + a / 2) / a);
+            int b = Math.min(255, ((pixel & 0xff) * 255 + a / 2) / a);
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+}
@@ -62,18 +62,34 @@ class ResultCollector {
 
         if (multiple) {
             arrayResult.pushMap(result);
-            int currentCount = waitCounter.addAndGet(1);
-
-            if (currentCount == waitCount) {
-                promise.resolve(arrayResult);
-                resultSent = true;
-            }
+            countResult();
         } else {
             promise.resolve(result);
             resultSent = true;
         }
     }
 
+    // item was intentionally left out of the result (e.g. collapsed duplicate),
+    // but it still counts towards the number of results we are waiting for
+    synchronized void notifySkipped() {
+        if (!isRequestValid()) {
+            return;
+        }
+
+        if (multiple) {
+            countResult();
+        }
+    }
+
+    private void countResult() {
+        int currentCount = waitCounter.addAndGet(1);
+
+        if (currentCount == waitCount) {
+            promise.resolve(arrayResult);
+            resultSent = true;
+        }
+    }
+
     synchronized void notifyProblem(String code, String message) {
         if (!isRequestValid()) {
             return;
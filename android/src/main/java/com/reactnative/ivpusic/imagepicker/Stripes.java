@@ -0,0 +1,87 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs per-row image work on horizontal stripes, in parallel on a fork-join pool sized to the
+ * number of cores. Shared by {@link Resampler} and {@link PaletteQuantizer}.
+ */
+class Stripes {
+    interface Task {
+        void run(int from, int to);
+    }
+
+    private static ForkJoinPool pool;
+    // stripes run one after another on the calling thread while memory is short
+    private static volatile boolean sequential;
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        }
+        return pool;
+    }
+
+    static void setSequential(boolean value) {
+        sequential = value;
+    }
+
+    static int getParallelism() {
+        return getPool().getParallelism();
+    }
+
+    /**
+     * Splits rows into a few stripes per core (so uneven stripes balance out), each of at least
+     * minRows rows.
+     */
+    static void run(int rows, int minRows, Task task) {
+        runSized(rows, Math.max(minRows, rows / (getParallelism() * 4)), task);
+    }
+
+    /**
+     * Splits rows into one stripe per core, for tasks which need per-stripe state that is
+     * expensive to set up or merge.
+     */
+    static void runPerCore(int rows, Task task) {
+        runSized(rows, (rows + getParallelism() - 1) / getParallelism(), task);
+    }
+
+    private static void runSized(int rows, int stripeRows, Task task) {
+        stripeRows = Math.max(1, stripeRows);
+        if (sequential) {
+            for (int from = 0; from < rows; from += stripeRows) {
+                task.run(from, Math.min(rows, from + stripeRows));
+            }
+            return;
+        }
+        getPool().invoke(new Split(task, 0, rows, stripeRows));
+    }
+
+    private static class Split extends RecursiveAction {
+        private final Task task;
+        private final int from;
+        private final int to;
+        private final int stripeRows;
+
+        Split(Task task, int from, int to, int stripeRows) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.stripeRows = stripeRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= stripeRows) {
+                task.run(from, to);
+                return;
+            }
+
+            // split on a multiple of stripeRows, so stripes don't end up smaller than asked for
+            int stripes = (to - from + stripeRows - 1) / stripeRows;
+            int middle = from + stripes / 2 * stripeRows;
+            invokeAll(new Split(task, from, middle, stripeRows), new Split(task, middle, to, stripeRows));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Small frames of a picked video (poster, scrub strip) written as JPEG or WebP files, selected by
+ * the "videoFrameTimes" option. Frames come from the retriever session which also reads the rest
+ * of the video result. On API 27+ the platform decodes them at the requested size
+ * (getScaledFrameAtTime), older versions decode full frames and scale them down.
+ */
+class VideoFrames {
+    // longest side of frames which only check that the video can be decoded
+    static final int VALIDATION_SIZE = 64;
+
+    private static final int DEFAULT_MAX_SIZE = 320;
+    private static final int DEFAULT_QUALITY = 80;
+    private static final String WEBP = "webp";
+
+    // milliseconds, sorted so frames are decoded front to back
+    private final long[] times;
+    private final int maxSize;
+    private final boolean webp;
+    private final int quality;
+    private final int seekOption;
+
+    private VideoFrames(long[] times, int maxSize, boolean webp, int quality, int seekOption) {
+        this.times = times;
+        this.maxSize = maxSize;
+        this.webp = webp;
+        this.quality = quality;
+        this.seekOption = seekOption;
+    }
+
+    /**
+     * @return null if no frames were requested
+     */
+    static VideoFrames fromOptions(ReadableMap options) {
+        if (!options.hasKey("videoFrameTimes") || options.isNull("videoFrameTimes")) {
+            return null;
+        }
+
+        ReadableArray requested = options.getArray("videoFrameTimes");
+        long[] times = new long[requested.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = Math.max(0, (long) requested.getDouble(i));
+        }
+        Arrays.sort(times);
+
+        int maxSize = options.hasKey("videoFrameMaxSize") ? options.getInt("videoFrameMaxSize") : DEFAULT_MAX_SIZE;
+        boolean webp = options.hasKey("videoFrameFormat") && WEBP.equals(options.getString("videoFrameFormat"));
+        int quality = options.hasKey("videoFrameQuality") ? (int) (options.getDouble("videoFrameQuality") * 100) : DEFAULT_QUALITY;
+        boolean exact = options.hasKey("videoFrameExact") && options.getBoolean("videoFrameExact");
+
+        // key frames decode fastest, exact frames need decoding from the previous key frame on
+        int seekOption = exact ? MediaMetadataRetriever.OPTION_CLOSEST : MediaMetadataRetriever.OPTION_CLOSEST_SYNC;
+        return new VideoFrames(times, Math.max(1, maxSize), webp, quality, seekOption);
+    }
+
+    /**
+     * Frame at the given time, with its longest side at most maxSize.
+     *
+     * @param timeMs time of the frame, -1 for the one the platform picks as representative
+     * @return null if the video has no frame which can be decoded
+     */
+    static Bitmap getFrame(Context context, MediaMetadataRetriever retriever, long timeMs, int option, int maxSize) throws IOException {
+        long timeUs = timeMs < 0 ? -1 : timeMs * 1000;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            return retriever.getScaledFrameAtTime(timeUs, option, maxSize, maxSize);
+        }
+
+        int width = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+        int height = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+        DecodeBudget decodeBudget = DecodeBudget.get(context);
+        long reservation = decodeBudget.acquire(DecodeBudget.bitmapBytes(width, height, 4));
+
+        try {
+            Bitmap frame = retriever.getFrameAtTime(timeUs, option);
+            if (frame == null || Math.max(frame.getWidth(), frame.getHeight()) <= maxSize) {
+                return frame;
+            }
+
+            float scale = (float) maxSize / Math.max(frame.getWidth(), frame.getHeight());
+            Bitmap scaled = Bitmap.createScaledBitmap(frame,
+                    Math.max(1, Math.round(frame.getWidth() * scale)), Math.max(1, Math.round(frame.getHeight() * scale)), true);
+            if (scaled != frame) {
+                frame.recycle();
+            }
+            return scaled;
+        } finally {
+            decodeBudget.release(reservation);
+        }
+    }
+
+    /**
+     * Displayed size of the video. Whether the retriever applies rotation to frames differs
+     * between versions, so the sample frame (any size) decides whether metadata dimensions are
+     * swapped.
+     *
+     * @return width and height, or null if the video has no size metadata
+     */
+    static int[] getSize(MediaMetadataRetriever retriever, Bitmap sample) {
+        int width = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+        int height = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        boolean swapped = width != height && (sample.getWidth() > sample.getHeight()) != (width > height);
+        return swapped ? new int[]{height, width} : new int[]{width, height};
+    }
+
+    /**
+     * Writes the requested frames, times past the end of the video are moved to its end.
+     *
+     * @param durationMs duration of the video, 0 or less if it isn't known
+     * @return frames which could be decoded, as {time, path, width, height, size}
+     */
+    @SuppressWarnings("deprecation")
+    WritableArray extract(Context context, MediaMetadataRetriever retriever, long durationMs) throws IOException {
+        WritableArray frames = new WritableNativeArray();
+        Bitmap.CompressFormat format = !webp
+                ? Bitmap.CompressFormat.JPEG
+                : Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+
+        for (long requested : times) {
+            long time = durationMs > 0 ? Math.min(requested, durationMs) : requested;
+            Bitmap frame = getFrame(context, retriever, time, seekOption, maxSize);
+            if (frame == null) {
+                continue;
+            }
+
+            OutputTarget target = OutputTarget.newImageFile(context).withExtension(webp ? "webp" : "jpg");
+            try {
+                OutputStream os = target.open(context);
+                try {
+                    frame.compress(format, quality, os);
+                } finally {
+                    os.close();
+                }
+
+                WritableMap result = new WritableNativeMap();
+                result.putDouble("time", time);
+                result.putString("path", "file://" + target.getFile().getPath());
+                result.putInt("width", frame.getWidth());
+                result.putInt("height", frame.getHeight());
+                result.putInt("size", (int) target.getFile().length());
+                frames.pushMap(result);
+            } finally {
+                frame.recycle();
+            }
+        }
+
+        return frames;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value != null ? Integer.parseInt(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Cuts a clip out of a picked video ("trimStartMs", "trimEndMs") and optionally drops its audio
+ * ("videoRemoveAudio") by copying encoded samples into a new MP4, nothing is decoded or encoded.
+ * Without re-encoding a clip can only start on a key frame, so it starts at the last key frame at
+ * or before the requested start and ends right before the first key frame at or after the
+ * requested end. The clip always covers the requested range, and every frame in it decodes.
+ */
+class VideoTrimmer {
+    private static final int DEFAULT_SAMPLE_SIZE = 1024 * 1024;
+
+    // microseconds, end is Long.MAX_VALUE if the clip runs to the end of the video
+    private final long startUs;
+    private final long endUs;
+    private final boolean removeAudio;
+
+    private VideoTrimmer(long startUs, long endUs, boolean removeAudio) {
+        this.startUs = startUs;
+        this.endUs = endUs;
+        this.removeAudio = removeAudio;
+    }
+
+    /**
+     * @return null if the video is returned as it is
+     */
+    static VideoTrimmer fromOptions(ReadableMap options) {
+        long startMs = options.hasKey("trimStartMs") ? Math.max(0, (long) options.getDouble("trimStartMs")) : 0;
+        long endMs = options.hasKey("trimEndMs") ? (long) options.getDouble("trimEndMs") : -1;
+        boolean removeAudio = options.hasKey("videoRemoveAudio") && options.getBoolean("videoRemoveAudio");
+
+        if (startMs == 0 && endMs < 0 && !removeAudio) {
+            return null;
+        }
+        if (endMs >= 0 && endMs <= startMs) {
+            throw new IllegalArgumentException("trimEndMs has to be greater than trimStartMs");
+        }
+
+        return new VideoTrimmer(startMs * 1000, endMs >= 0 ? endMs * 1000 : Long.MAX_VALUE, removeAudio);
+    }
+
+    /**
+     * Writes the clip to output as MP4.
+     */
+    void trim(String input, String output) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaMuxer muxer = null;
+        boolean completed = false;
+
+        try {
+            extractor.setDataSource(input);
+            muxer = new MediaMuxer(output, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+
+            // extractor track -> muxer track, -1 for tracks which are left out
+            int trackCount = extractor.getTrackCount();
+            int[] tracks = new int[trackCount];
+            int videoTrack = -1;
+            boolean hasAudio = false;
+            int sampleSize = DEFAULT_SAMPLE_SIZE;
+
+            for (int i = 0; i < trackCount; i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                boolean video = mime != null && mime.startsWith("video/");
+                boolean audio = mime != null && mime.startsWith("audio/");
+
+                // subtitles, timed metadata and the like aren't supported by the MP4 muxer
+                if (!video && !(audio && !removeAudio)) {
+                    tracks[i] = -1;
+                    continue;
+                }
+
+                if (video && videoTrack < 0) {
+                    videoTrack = i;
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && format.containsKey(MediaFormat.KEY_ROTATION)) {
+                        muxer.setOrientationHint(format.getInteger(MediaFormat.KEY_ROTATION));
+                    }
+                }
+                if (format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+                    sampleSize = Math.max(sampleSize, format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE));
+                }
+
+                hasAudio |= audio;
+                extractor.selectTrack(i);
+                tracks[i] = muxer.addTrack(format);
+            }
+
+            if (videoTrack < 0) {
+                throw new IOException("Video has no video track");
+            }
+
+            // with the video track selected, seeking lands on its key frames
+            extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            long clipStartUs = -1;
+            long clipEndUs = Long.MAX_VALUE;
+
+            muxer.start();
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(sampleSize);
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+            do {
+                int track = extractor.getSampleTrackIndex();
+                if (track < 0) {
+                    break;
+                }
+
+                long timeUs = extractor.getSampleTime();
+                boolean sync = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+
+                if (track == videoTrack) {
+                    if (clipStartUs < 0) {
+                        clipStartUs = timeUs;
+                    }
+                    // samples come in decoding order, so all frames shown before this key frame
+                    // are written by now
+                    if (sync && timeUs >= endUs && timeUs > clipStartUs) {
+                        clipEndUs = timeUs;
+                    }
+                }
+
+                // interleaving can put audio of the clip after the video end, read on until the
+                // audio is past it
+                if (clipEndUs != Long.MAX_VALUE) {
+                    if (timeUs >= clipEndUs && (track != videoTrack || !hasAudio)) {
+                        break;
+                    }
+                    if (track == videoTrack) {
+                        continue;
+                    }
+                }
+
+                // audio in front of the first key frame has no picture to go with
+                if (clipStartUs < 0 || timeUs < clipStartUs) {
+                    continue;
+                }
+
+                info.offset = 0;
+                info.size = extractor.readSampleData(buffer, 0);
+                if (info.size < 0) {
+                    break;
+                }
+                info.presentationTimeUs = timeUs - clipStartUs;
+                info.flags = sync ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+                muxer.writeSampleData(tracks[track], buffer, info);
+            } while (extractor.advance());
+
+            if (clipStartUs < 0) {
+                throw new IOException("Video has no frames after trimStartMs");
+            }
+
+            muxer.stop();
+            completed = true;
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            // the muxer throws these for codecs which MP4 can't hold
+            throw new IOException("Cannot remux video: " + e.getMessage(), e);
+        } finally {
+            extractor.release();
+            if (muxer != null) {
+                muxer.release();
+            }
+            if (!completed) {
+                new File(output).delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.reactnative.ivpusic.imagepicker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Animated WebP reader for {@link AnimatedImage}. Android has no API which decodes single frames
+ * of an animation, so the compressed data of every ANMF chunk is wrapped into a still WebP of
+ * its own and decoded by BitmapFactory, into the bitmap of the previous frame when it is big
+ * enough.
+ */
+class WebpAnimationReader extends AnimatedImage {
+    private static final int FLAG_ANIMATION = 0x02;
+    private static final int FLAG_ALPHA = 0x10;
+    private static final int FRAME_HEADER_SIZE = 16;
+
+    private byte[] data = new byte[0];
+    private int[] framePixels = new int[0];
+    private Bitmap frameBitmap;
+
+    // area of the frame read last (clipped to the canvas), cleared before the next one if set
+    private boolean lastDisposed;
+    private int lastX;
+    private int lastY;
+    private int lastWidth;
+    private int lastHeight;
+
+    private int frameDuration;
+
+    private WebpAnimationReader(InputStream in, int width, int height, int loopCount) {
+        super(in, width, height, loopCount);
+    }
+
+    /**
+     * @return null if the WebP isn't animated
+     */
+    static WebpAnimationReader open(InputStream in) throws IOException {
+        try {
+            byte[] header = new byte[12];
+            readFully(in, header, 0, header.length);
+            if (!isFourCc(header, 0, "RIFF") || !isFourCc(header, 8, "WEBP")) {
+                in.close();
+                return null;
+            }
+
+            byte[] chunk = new byte[8];
+            readFully(in, chunk, 0, chunk.length);
+            if (!isFourCc(chunk, 0, "VP8X")) {
+                in.close();
+                return null;
+            }
+
+            byte[] extended = new byte[10];
+            readFully(in, extended, 0, extended.length);
+            if ((extended[0] & FLAG_ANIMATION) == 0) {
+                in.close();
+                return null;
+            }
+            int width = 1 + readInt24(extended, 4);
+            int height = 1 + readInt24(extended, 7);
+
+            // ICCP (and unknown chunks) may come in front of ANIM
+            while (true) {
+                readFully(in, chunk, 0, chunk.length);
+                int size = readInt32(chunk, 4);
+                if (isFourCc(chunk, 0, "ANIM") && size >= 6) {
+                    byte[] animation = new byte[size];
+                    readFully(in, animation, 0, size);
+                    skipFully(in, size & 1);
+                    int loopCount = (animation[4] & 0xff) | (animation[5] & 0xff) << 8;
+                    return new WebpAnimationReader(in, width, height, loopCount);
+                }
+                skipFully(in, size + (size & 1));
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    boolean readFrame(int[] canvas) throws IOException {
+        if (lastDisposed) {
+            for (int y = lastY; y < lastY + lastHeight; y++) {
+                int offset = y * width + lastX;
+                for (int x = 0; x < lastWidth; x++) {
+                    canvas[offset + x] = 0;
+                }
+            }
+            lastDisposed = false;
+        }
+
+        InputStream in = getInput();
+        byte[] chunk = new byte[8];
+        while (true) {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            chunk[0] = (byte) first;
+            readFully(in, chunk, 1, chunk.length - 1);
+            int size = readInt32(chunk, 4);
+
+            if (!isFourCc(chunk, 0, "ANMF")) {
+                // EXIF and XMP follow the frames
+                skipFully(in, size + (size & 1));
+                continue;
+            }
+            if (size < FRAME_HEADER_SIZE + 8) {
+                throw new IOException("Invalid animation frame");
+            }
+
+            // room for a RIFF and VP8X header in front of the frame data
+            int prefix = 12 + 18 - FRAME_HEADER_SIZE;
+            if (data.length < prefix + size) {
+                data = new byte[prefix + size];
+            }
+            readFully(in, data, prefix, size);
+            skipFully(in, size & 1);
+
+            drawFrame(canvas, prefix, size);
+            return true;
+        }
+    }
+
+    private void drawFrame(int[] canvas, int offset, int size) throws IOException {
+        int frameX = readInt24(data, offset) * 2;
+        int frameY = readInt24(data, offset + 3) * 2;
+        int frameWidth = 1 + readInt24(data, offset + 6);
+        int frameHeight = 1 + readInt24(data, offset + 9);
+        int duration = readInt24(data, offset + 12);
+        int flags = data[offset + 15];
+        boolean blend = (flags & 0x02) == 0;
+
+        // frame data is a VP8L chunk, or a VP8 chunk after an optional ALPH chunk, the latter
+        // only decodes in the extended format
+        int start = offset + FRAME_HEADER_SIZE;
+        int end = offset + size;
+        if (isFourCc(data, start, "ALPH")) {
+            start -= 18;
+            writeFourCc(data, start, "VP8X");
+            writeInt32(data, start + 4, 10);
+            data[start + 8] = FLAG_ALPHA;
+            data[start + 9] = 0;
+            data[start + 10] = 0;
+            data[start + 11] = 0;
+            writeInt24(data, start + 12, frameWidth - 1);
+            writeInt24(data, start + 15, frameHeight - 1);
+        }
+        start -= 12;
+        writeFourCc(data, start, "RIFF");
+        writeInt32(data, start + 4, end - start - 8);
+        writeFourCc(data, start + 8, "WEBP");
+
+        Bitmap frame = decode(start, end - start);
+        if (frame == null) {
+            throw new IOException("Cannot decode animation frame");
+        }
+        frameBitmap = frame;
+
+        int decodedWidth = Math.min(frameWidth, frame.getWidth());
+        int decodedHeight = Math.min(frameHeight, frame.getHeight());
+        if (framePixels.length < decodedWidth * decodedHeight) {
+            framePixels = new int[decodedWidth * decodedHeight];
+        }
+        frame.getPixels(framePixels, 0, decodedWidth, 0, 0, decodedWidth, decodedHeight);
+
+        lastX = Math.min(frameX, width);
+        lastY = Math.min(frameY, height);
+        lastWidth = Math.min(decodedWidth, width - lastX);
+        lastHeight = Math.min(decodedHeight, height - lastY);
+        for (int y = 0; y < lastHeight; y++) {
+            int source = y * decodedWidth;
+            int destination = (lastY + y) * width + lastX;
+            for (int x = 0; x < lastWidth; x++) {
+                int pixel = framePixels[source + x];
+                canvas[destination + x] = blend ? blend(pixel, canvas[destination + x]) : pixel;
+            }
+        }
+
+        lastDisposed = (flags & 0x01) != 0;
+        frameDuration = duration;
+    }
+
+    private Bitmap decode(int offset, int length) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inScaled = false;
+        if (frameBitmap != null) {
+            options.inBitmap = frameBitmap;
+            try {
+                return BitmapFactory.decodeByteArray(data, offset, length, options);
+            } catch (IllegalArgumentException e) {
+                // frame bigger than the previous allocation
+                frameBitmap.recycle();
+                frameBitmap = null;
+                options.inBitmap = null;
+            }
+        }
+        return BitmapFactory.decodeByteArray(data, offset, length, options);
+    }
+
+    @Override
+    int getFrameDuration() {
+        return frameDuration;
+    }
+
+    @Override
+    long getWorkingBytes() {
+        // decoded frame and its pixels
+        return (long) width * height * 8;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (frameBitmap != null) {
+            frameBitmap.recycle();
+            frameBitmap = null;
+        }
+        super.close();
+    }
+
+    static boolean isFourCc(byte[] data, int offset, String fourCc) {
+        for (int i = 0; i < 4; i++) {
+            if (data[offset + i] != fourCc.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeFourCc(byte[] data, int offset, String fourCc) {
+        for (int i = 0; i < 4; i++) {
+            data[offset + i] = (byte) fourCc.charAt(i);
+        }
+    }
+
+    static int readInt24(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16;
+    }
+
+    static int readInt32(byte[] data, int offset) {
+        return readInt24(data, offset) | (data[offset + 3] & 0xff) << 24;
+    }
+
+    static void writeInt24(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+    }
+
+    static void writeInt32(byte[] data, int offset, int value) {
+        writeInt24(data, offset, value);
+        data[offset + 3] = (byte) (value >> 24);
+    }
+}
@@ -3,40 +3,78 @@ package com.reactnative.ivpusic.imagepicker;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.module.annotations.ReactModule;
 
 @ReactModule(name = ImageCropPicker.NAME)
 public class PickerModule extends NativeImageCropPickerSpec {
-    private final ImageCropPicker picker;
+    // created on first use, loading it pulls in the cropper, EXIF and media picker classes
+    private ImageCropPicker picker;
 
     public PickerModule(ReactApplicationContext reactContext) {
         super(reactContext);
-        picker = new ImageCropPicker(reactContext);
+    }
+
+    private synchronized ImageCropPicker getPicker() {
+        if (picker == null) {
+            picker = new ImageCropPicker(getReactApplicationContext());
+        }
+        return picker;
     }
 
     @Override
     public void openPicker(ReadableMap options, Promise promise) {
-        picker.openPicker(options, promise);
+        getPicker().openPicker(options, promise);
     }
 
     @Override
     public void openCamera(ReadableMap options, Promise promise) {
-        picker.openCamera(options, promise);
+        getPicker().openCamera(options, promise);
     }
 
     @Override
     public void openCropper(ReadableMap options, Promise promise) {
-        picker.openCropper(options, promise);
+        getPicker().openCropper(options, promise);
     }
 
     @Override
     public void clean(Promise promise) {
-        picker.clean(promise);
+        getPicker().clean(promise);
     }
 
     @Override
     public void cleanSingle(String path, Promise promise) {
-        picker.cleanSingle(path, promise);
+        getPicker().cleanSingle(path, promise);
+    }
+
+    @Override
+    public void cropImage(String path, ReadableMap rect, ReadableMap options, Promise promise) {
+        getPicker().cropImage(path, rect, options, promise);
+    }
+
+    @Override
+    public void processImages(ReadableArray paths, ReadableMap options, Promise promise) {
+        getPicker().processImages(paths, options, promise);
+    }
+
+    @Override
+    public void getMetrics(Promise promise) {
+        getPicker().getMetrics(promise);
+    }
+
+    @Override
+    public void warmUp(Promise promise) {
+        getPicker().warmUp(promise);
+    }
+
+    @Override
+    public void startTraceLog(Promise promise) {
+        getPicker().startTraceLog(promise);
+    }
+
+    @Override
+    public void stopTraceLog(Promise promise) {
+        getPicker().stopTraceLog(promise);
     }
-}
\ No newline at end of file
+}
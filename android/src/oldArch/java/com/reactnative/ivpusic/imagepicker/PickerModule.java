@@ -6,14 +6,22 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 
 public class PickerModule extends ReactContextBaseJavaModule {
-    private final ImageCropPicker picker;
+    // created on first use, loading it pulls in the cropper, EXIF and media picker classes
+    private ImageCropPicker picker;
 
     public PickerModule(ReactApplicationContext reactContext) {
         super(reactContext);
-        picker = new ImageCropPicker(reactContext);
+    }
+
+    private synchronized ImageCropPicker getPicker() {
+        if (picker == null) {
+            picker = new ImageCropPicker(getReactApplicationContext());
+        }
+        return picker;
     }
 
     @NonNull
@@ -24,26 +32,56 @@ public class PickerModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void openPicker(ReadableMap options, Promise promise) {
-        picker.openPicker(options, promise);
+        getPicker().openPicker(options, promise);
     }
 
     @ReactMethod
     public void openCamera(ReadableMap options, Promise promise) {
-        picker.openCamera(options, promise);
+        getPicker().openCamera(options, promise);
     }
 
     @ReactMethod
     public void openCropper(ReadableMap options, Promise promise) {
-        picker.openCropper(options, promise);
+        getPicker().openCropper(options, promise);
     }
 
     @ReactMethod
     public void clean(Promise promise) {
-        picker.clean(promise);
+        getPicker().clean(promise);
     }
 
     @ReactMethod
     public void cleanSingle(String path, Promise promise) {
-        picker.cleanSingle(path, promise);
+        getPicker().cleanSingle(path, promise);
+    }
+
+    @ReactMethod
+    public void cropImage(String path, ReadableMap rect, ReadableMap options, Promise promise) {
+        getPicker().cropImage(path, rect, options, promise);
+    }
+
+    @ReactMethod
+    public void processImages(ReadableArray paths, ReadableMap options, Promise promise) {
+        getPicker().processImages(paths, options, promise);
+    }
+
+    @ReactMethod
+    public void getMetrics(Promise promise) {
+        getPicker().getMetrics(promise);
+    }
+
+    @ReactMethod
+    public void warmUp(Promise promise) {
+        getPicker().warmUp(promise);
+    }
+
+    @ReactMethod
+    public void startTraceLog(Promise promise) {
+        getPicker().startTraceLog(promise);
+    }
+
+    @ReactMethod
+    public void stopTraceLog(Promise promise) {
+        getPicker().stopTraceLog(promise);
     }
-}
\ No newline at end of file
+}
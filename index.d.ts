@@ -348,6 +348,241 @@ declare module "react-native-image-crop-picker" {
          * @default Android: 1, iOS: 0.8
          */
         compressImageQuality?: number;
+
+        /**
+         * Format of compressed images. `png8` writes PNGs with a palette of at most 256 colors,
+         * which keeps text in screenshots and graphics sharp and is usually much smaller than
+         * JPEG for them. Images with few enough colors are kept exactly, others are quantized.
+         * Orientation is always applied to the pixels of PNGs.
+         *
+         * `auto` analyses a small decode of every image and picks `png8` for screenshots and
+         * graphics, WebP for photos with transparency and JPEG for other photos, adjusting
+         * `compressImageQuality` (or 0.85 if it isn't set) to how busy the image is. The choice is
+         * reported in `formatDecision`. Images are always re-encoded in this mode.
+         *
+         * Not applied to images cropped in the cropper (`openCropper`, `cropping: true`), which
+         * are always JPEGs. `cropImage` supports `png8` but not `auto`.
+         *
+         * @platform Android only
+         * @default 'jpeg'
+         */
+        compressImageFormat?: 'jpeg' | 'png8' | 'auto';
+
+        /**
+         * Maximum number of palette colors (2 to 256) of `png8` images.
+         *
+         * @platform Android only
+         * @default 256
+         */
+        compressImageColors?: number;
+
+        /**
+         * Dither quantized `png8` images, which hides banding in gradients and photos at the cost
+         * of bigger files.
+         *
+         * @platform Android only
+         * @default false
+         */
+        compressImageDither?: boolean;
+
+        /**
+         * Keep the animation of animated GIFs and WebPs which are resized or compressed, instead
+         * of keeping only their first frame. They are written as animated WebP, frame by frame,
+         * so memory use doesn't depend on the number of frames. Animations which need neither
+         * are returned as they are. Takes precedence over `compressImageFormat` for animations.
+         *
+         * @platform Android only
+         * @default false
+         */
+        keepAnimation?: boolean;
+
+        /**
+         * Include a perceptual hash (dHash) of the image in the response. Visually similar images
+         * have hashes which differ only in a few bits.
+         *
+         * @platform Android only
+         * @default false
+         */
+        includePerceptualHash?: boolean;
+
+        /**
+         * Include SHA-256 of the returned file in the response (`hash`), e.g. to deduplicate
+         * uploads. It is computed while the file is written, so files aren't read again.
+         *
+         * @platform Android only
+         * @default false
+         */
+        includeHash?: boolean;
+
+        /**
+         * Pixel format used when images are decoded for compression, resizing and cropping.
+         * `memoryLean` decodes opaque (JPEG) images with 16 bits per pixel instead of 32, halving
+         * memory use at the cost of some color precision. Images which can have alpha are always
+         * decoded at full precision.
+         *
+         * @platform Android only
+         * @default 'default'
+         */
+        decodeProfile?: 'default' | 'memoryLean';
+
+        /**
+         * Dither images decoded with the `memoryLean` profile, which hides banding in gradients.
+         *
+         * @platform Android only
+         * @default false
+         */
+        decodeDither?: boolean;
+
+        /**
+         * Filter images are scaled with when they are resized or cropped to a smaller size.
+         * `default` uses the platform's bilinear scaling after a power of two subsampled decode,
+         * `box` averages source pixels (fast, no aliasing), `bilinear` uses a triangle filter and
+         * `lanczos` a Lanczos-3 filter (sharpest, slowest). Non default filters use all cores.
+         * Not applied to images cropped in the cropper (`openCropper`, `cropping: true`), only
+         * to `cropImage` crops.
+         *
+         * @platform Android only
+         * @default 'default'
+         */
+        resizeFilter?: 'default' | 'box' | 'bilinear' | 'lanczos';
+
+        /**
+         * Encoder used for JPEGs written by the library. `native` uses libjpeg-turbo (or mozjpeg,
+         * which adds trellis quantization) with optimized Huffman tables, usually producing
+         * noticeably smaller files at the same quality. It has to be enabled at build time
+         * (see README), otherwise the platform encoder is used. Images cropped in the cropper
+         * (`openCropper`, `cropping: true`) are encoded by the cropper with the platform encoder.
+         *
+         * @platform Android only
+         * @default 'default'
+         */
+        jpegEncoder?: 'default' | 'native';
+
+        /**
+         * Write progressive JPEGs with the `native` encoder.
+         *
+         * @platform Android only
+         * @default true
+         */
+        jpegProgressive?: boolean;
+
+        /**
+         * Chroma subsampling used by the `native` encoder. `444` keeps full color resolution,
+         * which helps with text and sharp colored edges at the cost of bigger files.
+         *
+         * @platform Android only
+         * @default '420'
+         */
+        jpegChromaSubsampling?: '420' | '444';
+
+        /**
+         * Apply EXIF orientation to the pixels of the returned image (and variants) and reset
+         * the orientation tag, for consumers which ignore EXIF. Unmodified JPEGs are rotated
+         * losslessly whenever their dimensions allow it, otherwise they are re-encoded at full
+         * quality.
+         *
+         * @platform Android only
+         * @default false
+         */
+        normalizeOrientation?: boolean;
+
+        /**
+         * Remove metadata (EXIF, XMP, IPTC, comments) from returned JPEGs which aren't re-encoded.
+         * Only segments which change how the image looks are kept (JFIF, ICC profile and EXIF
+         * orientation). Image data is copied as it is, nothing is decoded. Location is also left
+         * out of `exif`.
+         *
+         * @platform Android only
+         * @default false
+         */
+        stripMetadata?: boolean;
+
+        /**
+         * Remove GPS data from EXIF (and drop XMP, which can repeat it) of returned JPEGs which
+         * aren't re-encoded, keeping all other metadata. Image data is copied as it is, nothing
+         * is decoded. Location is also left out of `exif`.
+         *
+         * @platform Android only
+         * @default false
+         */
+        redactLocation?: boolean;
+
+        /**
+         * When selecting multiple images, leave near-identical images (e.g. burst shots) out of
+         * the result. Only the first image of every group of similar images is returned.
+         *
+         * @platform Android only
+         * @default false
+         */
+        collapseDuplicates?: boolean;
+
+        /**
+         * Max number of differing perceptual hash bits (0-64) for two images to be considered
+         * duplicates when `collapseDuplicates` is enabled.
+         *
+         * @platform Android only
+         * @default 5
+         */
+        duplicateThreshold?: number;
+
+        /**
+         * Include a BlurHash string and the dominant color of the image in the response, so a
+         * placeholder can be rendered without loading the image file.
+         *
+         * @platform Android only
+         * @default false
+         */
+        includePlaceholder?: boolean;
+
+        /**
+         * Additional resized versions of the image (e.g. thumbnail and feed size). When the image
+         * itself is compressed, it and every variant are derived from the same decode. When the
+         * original (or an animation) is returned, the variants share a separate decode. Variant
+         * quality falls back to `compressImageQuality`.
+         *
+         * @platform Android only
+         */
+        variants?: VariantOptions[];
+
+        /**
+         * Write the image straight into this Uri (e.g. a MediaStore entry or a SAF document)
+         * instead of a new file in the app directory. Returned `path` is the Uri. Can only be used
+         * when a single image is returned.
+         *
+         * @platform Android only
+         */
+        outputUri?: string;
+
+        /**
+         * Write the image straight into this file descriptor (e.g. write end of a pipe). The
+         * descriptor is duplicated, so the caller still has to close it. Response has no `path`.
+         * Can only be used when a single image is returned.
+         *
+         * @platform Android only
+         */
+        outputFd?: number;
+    }
+
+    export interface VariantOptions {
+        /**
+         * Name returned with the variant in the response.
+         */
+        name?: string;
+
+        /**
+         * Max width of the variant.
+         */
+        maxWidth?: number;
+
+        /**
+         * Max height of the variant.
+         */
+        maxHeight?: number;
+
+        /**
+         * Compression quality of the variant (from 0 to 1, where 1 is best quality).
+         */
+        quality?: number;
     }
 
     type CropperOptions = ImageOptions & {
@@ -367,6 +602,74 @@ declare module "react-native-image-crop-picker" {
          * @default 'MediumQuality'
          */
         compressVideoPreset?: CompressVideoPresets;
+
+        /**
+         * Times (in milliseconds) of frames to extract from the video, e.g. for a poster or a
+         * scrub strip. Frames are returned in `frames`, times past the end of the video are moved
+         * to its end.
+         *
+         * @platform Android only
+         */
+        videoFrameTimes?: number[];
+
+        /**
+         * Maximum width and height of extracted frames.
+         *
+         * @platform Android only
+         * @default 320
+         */
+        videoFrameMaxSize?: number;
+
+        /**
+         * Format of extracted frames.
+         *
+         * @platform Android only
+         * @default 'jpeg'
+         */
+        videoFrameFormat?: 'jpeg' | 'webp';
+
+        /**
+         * Quality of extracted frames, from 0 to 1.
+         *
+         * @platform Android only
+         * @default 0.8
+         */
+        videoFrameQuality?: number;
+
+        /**
+         * Extract frames at exactly the requested times, instead of at the nearest key frames.
+         * Exact frames are slower, they need decoding from the previous key frame on.
+         *
+         * @platform Android only
+         * @default false
+         */
+        videoFrameExact?: boolean;
+
+        /**
+         * Start (in milliseconds) of the clip returned instead of the whole video. Encoded
+         * samples are copied without re-encoding, so the clip starts at the last key frame at or
+         * before this time and is written as MP4.
+         *
+         * @platform Android only
+         * @default 0
+         */
+        trimStartMs?: number;
+
+        /**
+         * End (in milliseconds) of the clip returned instead of the whole video. The clip ends
+         * right before the first key frame at or after this time.
+         *
+         * @platform Android only
+         */
+        trimEndMs?: number;
+
+        /**
+         * Leave the audio out of the returned video, which is then written as MP4.
+         *
+         * @platform Android only
+         * @default false
+         */
+        videoRemoveAudio?: boolean;
     };
 
     type AnyOptions = Omit<ImageOptions, 'mediaType'> & Omit<VideoOptions, 'mediaType'> & {
@@ -436,6 +739,14 @@ declare module "react-native-image-crop-picker" {
          * UNIX timestamp when image was last modified.
          */
         modificationDate?: string;
+
+        /**
+         * Optional stages which were requested but left out because the system was short on
+         * memory (see `getMetrics`).
+         *
+         * @platform Android only
+         */
+        deferredStages?: ('perceptualHash' | 'placeholder' | 'frames')[];
     }
 
     export interface Image extends ImageVideoCommon {
@@ -448,6 +759,77 @@ declare module "react-native-image-crop-picker" {
          * Cropped image rectangle (width, height, x, y).
          */
         cropRect?: CropRect | null;
+
+        /**
+         * Perceptual hash (64 bit dHash as hex string), when `includePerceptualHash` is enabled.
+         *
+         * @platform Android only
+         */
+        perceptualHash?: string;
+
+        /**
+         * SHA-256 of the returned file as hex string, when `includeHash` is enabled.
+         *
+         * @platform Android only
+         */
+        hash?: string;
+
+        /**
+         * BlurHash of the image, when `includePlaceholder` is enabled.
+         *
+         * @platform Android only
+         */
+        blurHash?: string;
+
+        /**
+         * Dominant color of the image as `#rrggbb`, when `includePlaceholder` is enabled.
+         *
+         * @platform Android only
+         */
+        dominantColor?: string;
+
+        /**
+         * Format picked by `compressImageFormat: 'auto'`, the statistics it was picked from and
+         * how long the analysis took.
+         *
+         * @platform Android only
+         */
+        formatDecision?: FormatDecision;
+
+        /**
+         * Resized versions of the image, when `variants` option is provided.
+         *
+         * @platform Android only
+         */
+        variants?: ImageVariant[];
+    }
+
+    export interface FormatDecision {
+        format: 'jpeg' | 'webp' | 'png8';
+        quality: number;
+        /**
+         * Distinct colors of the analysed decode, counted up to 257.
+         */
+        colors: number;
+        /**
+         * Share of neighboring pixels with identical colors (0 to 1).
+         */
+        flatness: number;
+        /**
+         * Mean brightness difference of neighboring pixels (0 to 1).
+         */
+        edgeDensity: number;
+        alpha: boolean;
+        analysisMs: number;
+    }
+
+    export interface ImageVariant {
+        name?: string;
+        path: string;
+        width: number;
+        height: number;
+        mime: string;
+        size: number;
     }
 
     export interface Video extends ImageVideoCommon {
@@ -455,6 +837,24 @@ declare module "react-native-image-crop-picker" {
          * Video duration in milliseconds
          */
         duration: number | null;
+
+        /**
+         * Frames extracted at `videoFrameTimes`, frames which can't be decoded are left out.
+         *
+         * @platform Android only
+         */
+        frames?: VideoFrame[];
+    }
+
+    export interface VideoFrame {
+        /**
+         * Time of the frame in milliseconds
+         */
+        time: number;
+        path: string;
+        width: number;
+        height: number;
+        size: number;
     }
 
     export type ImageOrVideo = Image | Video;
@@ -466,9 +866,75 @@ declare module "react-native-image-crop-picker" {
         height: number;
     }
 
+    export interface ProcessImagesOptions extends Omit<ImageOptions, 'mediaType'> {
+        /**
+         * Returned with every `addProcessedImageListener` event, to tell apart concurrently
+         * running batches.
+         */
+        batchId?: string;
+    }
+
+    export interface ProcessedImage {
+        /**
+         * Position of the image in `paths` passed to `processImages`.
+         */
+        index: number;
+
+        /**
+         * Path passed to `processImages`.
+         */
+        sourcePath: string;
+
+        /**
+         * Processed image, missing if the image failed or was skipped.
+         */
+        image?: Image;
+
+        /**
+         * Image was skipped as a near-duplicate of another image in the batch (`collapseDuplicates`).
+         */
+        skipped?: boolean;
+
+        error?: {
+            code: PickerErrorCode;
+            message: string;
+        };
+    }
+
+    export interface PickerMetrics {
+        /**
+         * Memory pressure reported by the system. While it is `low` or `critical` fewer images
+         * are processed at once, and optional stages are left out of results.
+         */
+        memoryPressure: 'none' | 'low' | 'critical';
+        /**
+         * How often memory pressure went up since the app started.
+         */
+        memoryPressureEvents: number;
+        /**
+         * Memory available for decoded images, lowered under memory pressure.
+         */
+        decodeBudgetBytes: number;
+        decodeBudgetReservedBytes: number;
+        /**
+         * Number of images processed at once.
+         */
+        concurrency: number;
+    }
+
+    export interface ProcessedImageEvent extends ProcessedImage {
+        batchId?: string;
+
+        /**
+         * Number of images in the batch.
+         */
+        total: number;
+    }
+
     type PickerErrorCodeCommon =
         | 'E_PICKER_CANCELLED'
         | 'E_NO_IMAGE_DATA_FOUND'
+        | 'E_CANNOT_PROCESS_VIDEO'
         | 'E_NO_LIBRARY_PERMISSION'
         | 'E_NO_CAMERA_PERMISSION'
         | 'E_ERROR_WHILE_CLEANING_FILES';
@@ -477,15 +943,18 @@ declare module "react-native-image-crop-picker" {
         | 'E_PICKER_CANNOT_RUN_CAMERA_ON_SIMULATOR'
         | 'E_CROPPER_IMAGE_NOT_FOUND'
         | 'E_CANNOT_SAVE_IMAGE'
-        | 'E_CANNOT_PROCESS_VIDEO';
+        | 'E_NOT_SUPPORTED';
 
     type PickerErrorCodeAndroid =
         | 'E_ACTIVITY_DOES_NOT_EXIST'
         | 'E_CALLBACK_ERROR'
         | 'E_FAILED_TO_SHOW_PICKER'
         | 'E_FAILED_TO_OPEN_CAMERA'
+        | 'E_CANNOT_WRITE_TRACE_LOG'
         | 'E_CAMERA_IS_NOT_AVAILABLE'
-        | 'E_CANNOT_LAUNCH_CAMERA';
+        | 'E_CANNOT_LAUNCH_CAMERA'
+        | 'E_LOW_MEMORY_ERROR'
+        | 'E_INVALID_OPTIONS';
 
     export type PickerErrorCode = PickerErrorCodeCommon | PickerErrorCodeIOS | PickerErrorCodeAndroid;
 
@@ -503,6 +972,32 @@ declare module "react-native-image-crop-picker" {
     export function openCropper(options: CropperOptions): Promise<Image>;
     export function clean(): Promise<void>;
     export function cleanSingle(path: string): Promise<void>;
+    /** @platform Android only */
+    export function cropImage(path: string, rect: CropRect, options: Omit<ImageOptions, 'mediaType'>): Promise<Image>;
+    /** @platform Android only */
+    export function processImages(paths: string[], options: ProcessImagesOptions): Promise<ProcessedImage[]>;
+    /** @platform Android only */
+    export function getMetrics(): Promise<PickerMetrics>;
+    /**
+     * Loads and creates what the first pick needs ahead of time, call it while the app is idle.
+     * Resolves without doing anything on iOS.
+     */
+    export function warmUp(): Promise<void>;
+    /**
+     * Starts writing trace events of the processing pipeline to a Chrome trace JSON file (which
+     * opens in Perfetto or chrome://tracing), resolves with its path.
+     *
+     * @platform Android only
+     */
+    export function startTraceLog(): Promise<string>;
+    /**
+     * Finishes the trace log, resolves with its path, or null if no log was running.
+     *
+     * @platform Android only
+     */
+    export function stopTraceLog(): Promise<string | null>;
+    /** @platform Android only */
+    export function addProcessedImageListener(listener: (event: ProcessedImageEvent) => void): import('react-native').EmitterSubscription;
 
     export interface ImageCropPicker {
         openPicker<O extends Options>(options: O): Promise<PossibleArray<O, MediaType<O>>>;
@@ -510,6 +1005,17 @@ declare module "react-native-image-crop-picker" {
         openCropper(options: CropperOptions): Promise<Image>;
         clean(): Promise<void>;
         cleanSingle(path: string): Promise<void>;
+        /** @platform Android only */
+        cropImage(path: string, rect: CropRect, options: Omit<ImageOptions, 'mediaType'>): Promise<Image>;
+        /** @platform Android only */
+        processImages(paths: string[], options: ProcessImagesOptions): Promise<ProcessedImage[]>;
+        /** @platform Android only */
+        getMetrics(): Promise<PickerMetrics>;
+        warmUp(): Promise<void>;
+        /** @platform Android only */
+        startTraceLog(): Promise<string>;
+        /** @platform Android only */
+        stopTraceLog(): Promise<string | null>;
     }
 
     const ImageCropPicker: ImageCropPicker;
@@ -1,3 +1,4 @@
+import { DeviceEventEmitter } from "react-native";
 import ImageCropPicker from "./src/NativeImageCropPicker";
 
 export default ImageCropPicker;
@@ -6,3 +7,16 @@ export const openCamera = ImageCropPicker.openCamera;
 export const openCropper = ImageCropPicker.openCropper;
 export const clean = ImageCropPicker.clean;
 export const cleanSingle = ImageCropPicker.cleanSingle;
+export const cropImage = ImageCropPicker.cropImage;
+export const processImages = ImageCropPicker.processImages;
+export const getMetrics = ImageCropPicker.getMetrics;
+export const warmUp = ImageCropPicker.warmUp;
+export const startTraceLog = ImageCropPicker.startTraceLog;
+export const stopTraceLog = ImageCropPicker.stopTraceLog;
+
+export function addProcessedImageListener(listener) {
+  return DeviceEventEmitter.addListener(
+    "RNCImageCropPickerProcessedImage",
+    listener
+  );
+}
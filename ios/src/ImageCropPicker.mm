@@ -39,6 +39,9 @@
 #define ERROR_CANNOT_PROCESS_VIDEO_KEY @"E_CANNOT_PROCESS_VIDEO"
 #define ERROR_CANNOT_PROCESS_VIDEO_MSG @"Cannot process video data"
 
+#define ERROR_NOT_SUPPORTED_KEY @"E_NOT_SUPPORTED"
+#define ERROR_NOT_SUPPORTED_MSG @"This method is not supported on iOS"
+
 @implementation ImageResult
 @end
 
@@ -384,6 +387,42 @@ RCT_EXPORT_METHOD(openCropper:(NSDictionary *)options
     }];
 }
 
+RCT_EXPORT_METHOD(cropImage:(NSString *)path
+                  rect:(NSDictionary *)rect
+                  options:(NSDictionary *)options
+                  resolver:(RCTPromiseResolveBlock)resolve
+                  rejecter:(RCTPromiseRejectBlock)reject) {
+    reject(ERROR_NOT_SUPPORTED_KEY, ERROR_NOT_SUPPORTED_MSG, nil);
+}
+
+RCT_EXPORT_METHOD(processImages:(NSArray *)paths
+                  options:(NSDictionary *)options
+                  resolver:(RCTPromiseResolveBlock)resolve
+                  rejecter:(RCTPromiseRejectBlock)reject) {
+    reject(ERROR_NOT_SUPPORTED_KEY, ERROR_NOT_SUPPORTED_MSG, nil);
+}
+
+RCT_EXPORT_METHOD(getMetrics:(RCTPromiseResolveBlock)resolve
+                  rejecter:(RCTPromiseRejectBlock)reject) {
+    reject(ERROR_NOT_SUPPORTED_KEY, ERROR_NOT_SUPPORTED_MSG, nil);
+}
+
+RCT_EXPORT_METHOD(warmUp:(RCTPromiseResolveBlock)resolve
+                  rejecter:(RCTPromiseRejectBlock)reject) {
+    // nothing is loaded lazily on iOS
+    resolve(nil);
+}
+
+RCT_EXPORT_METHOD(startTraceLog:(RCTPromiseResolveBlock)resolve
+                  rejecter:(RCTPromiseRejectBlock)reject) {
+    reject(ERROR_NOT_SUPPORTED_KEY, ERROR_NOT_SUPPORTED_MSG, nil);
+}
+
+RCT_EXPORT_METHOD(stopTraceLog:(RCTPromiseResolveBlock)resolve
+                  rejecter:(RCTPromiseRejectBlock)reject) {
+    reject(ERROR_NOT_SUPPORTED_KEY, ERROR_NOT_SUPPORTED_MSG, nil);
+}
+
 - (void)showActivityIndicator:(void (^)(UIActivityIndicatorView*, UIView*))handler {
     dispatch_async(dispatch_get_main_queue(), ^{
         UIView *mainView = [[self getRootVC] view];
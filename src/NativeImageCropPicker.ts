@@ -22,6 +22,67 @@ export type PickerResponse = {
   };
   creationDate?: string;
   modificationDate?: string;
+  perceptualHash?: string;
+  hash?: string;
+  blurHash?: string;
+  dominantColor?: string;
+  formatDecision?: {
+    format: string;
+    quality: number;
+    colors: number;
+    flatness: number;
+    edgeDensity: number;
+    alpha: boolean;
+    analysisMs: number;
+  };
+  frames?: {
+    time: number;
+    path: string;
+    width: number;
+    height: number;
+    size: number;
+  }[];
+  deferredStages?: string[];
+  variants?: {
+    name?: string;
+    path: string;
+    width: number;
+    height: number;
+    mime: string;
+    size: number;
+  }[];
+};
+
+export type CropRect = {
+  x: number;
+  y: number;
+  width: number;
+  height: number;
+};
+
+export type ProcessedImage = {
+  index: number;
+  sourcePath: string;
+  image?: PickerResponse;
+  skipped?: boolean;
+  error?: {
+    code: string;
+    message: string;
+  };
+};
+
+// emitted for every image as soon as it is processed, the promise resolves without these fields
+export type ProcessedImageEvent = ProcessedImage & {
+  batchId?: string;
+  total: number;
+};
+
+export type PickerMetrics = {
+  memoryPressure: string;
+  memoryPressureEvents: number;
+  decodeBudgetBytes: number;
+  decodeBudgetReservedBytes: number;
+  concurrency: number;
 };
 
 export type PickerOptions = {
@@ -46,6 +107,41 @@ export type PickerOptions = {
   enableRotationGesture?: boolean;
   disableCropperColorSetters?: boolean;
   useFrontCamera?: boolean;
+  includePerceptualHash?: boolean;
+  includeHash?: boolean;
+  decodeProfile?: string;
+  decodeDither?: boolean;
+  resizeFilter?: string;
+  jpegEncoder?: string;
+  jpegProgressive?: boolean;
+  jpegChromaSubsampling?: string;
+  compressImageFormat?: string;
+  compressImageColors?: number;
+  compressImageDither?: boolean;
+  keepAnimation?: boolean;
+  videoFrameTimes?: number[];
+  videoFrameMaxSize?: number;
+  videoFrameFormat?: string;
+  videoFrameQuality?: number;
+  videoFrameExact?: boolean;
+  trimStartMs?: number;
+  trimEndMs?: number;
+  videoRemoveAudio?: boolean;
+  normalizeOrientation?: boolean;
+  stripMetadata?: boolean;
+  redactLocation?: boolean;
+  collapseDuplicates?: boolean;
+  duplicateThreshold?: number;
+  includePlaceholder?: boolean;
+  variants?: {
+    name?: string;
+    maxWidth?: number;
+    maxHeight?: number;
+    quality?: number;
+  }[];
+  batchId?: string;
+  outputUri?: string;
+  outputFd?: number;
 };
 
 export interface Spec extends TurboModule {
@@ -54,6 +150,19 @@ export interface Spec extends TurboModule {
   openCropper(options: PickerOptions): Promise<PickerResponse>;
   clean(): Promise<void>;
   cleanSingle(path: string): Promise<void>;
+  cropImage(
+    path: string,
+    rect: CropRect,
+    options: PickerOptions
+  ): Promise<PickerResponse>;
+  processImages(
+    paths: string[],
+    options: PickerOptions
+  ): Promise<ProcessedImage[]>;
+  getMetrics(): Promise<PickerMetrics>;
+  warmUp(): Promise<void>;
+  startTraceLog(): Promise<string>;
+  stopTraceLog(): Promise<string | null>;
 }
 
 export default TurboModuleRegistry.getEnforcing<Spec>(